@@ -0,0 +1,146 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.bitcoinkernel.ContextManager;
+import org.bitcoinkernel.KernelTypes;
+import org.bitcoinkernel.Logger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.Chainstate.*;
+
+// Shared fixtures for the benchmarks: regtest block data and an in-memory chainstate
+final class BenchmarkData {
+
+    // Relative to the repository root, which is the working directory of the jmh task
+    static final String BLOCK_DATA_FILE = System.getProperty("bitcoinkernel.blockData", "tests/block_data.txt");
+
+    // P2PKH spend used by the script verification benchmarks (same vector as BitcoinKernelTest)
+    static final String P2PKH_SCRIPT_PUBKEY = "76a9144bfbaf6afb76cc5771bc6404810d1cc041a6933988ac";
+    static final String P2PKH_TRANSACTION = "02000000013f7cebd65c27431a90bba7f796914fe8cc2ddfc3f2cbd6f7e5f2fc854534da95000000006b483045022100de1ac3bcdfb0332207c4a91f3832bd2c2915840165f876ab47c5f8996b971c3602201c6c053d750fadde599e6f5c4e1963df0f01fc0d97815e8157e3d59fe09ca30d012103699b464d1d8bc9e47d4fb1cdaa89a1c5783d68363c4dbc4b524ed3d857148617feffffff02836d3c01000000001976a914fc25d6d5c94003bf5b0c7b640a248e2c637fcfb088ac7ada8202000000001976a914fbed3d9b11183209a57999d54d59f67c019e756c88ac6acb0700";
+
+    private static final AtomicBoolean loggingDisabled = new AtomicBoolean();
+
+    private BenchmarkData() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * Reads the hex encoded regtest blocks, one per line.
+     */
+    static List<byte[]> readBlocks() throws IOException {
+        List<byte[]> blocks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(BLOCK_DATA_FILE))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    blocks.add(hexToBytes(line));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    static byte[] hexToBytes(String hex) {
+        int len = hex.length();
+        if (len % 2 != 0) {
+            throw new IllegalArgumentException("Hex string must have even length: got " + len);
+        }
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(hex.charAt(i), 16) << 4)
+                                 + Character.digit(hex.charAt(i + 1), 16));
+        }
+        return data;
+    }
+
+    /**
+     * Stops the kernel from buffering log messages nobody reads. The kernel
+     * only allows this once per process.
+     */
+    static void disableKernelLogging() {
+        if (loggingDisabled.compareAndSet(false, true)) {
+            Logger.LoggingManager.disable();
+        }
+    }
+
+    /**
+     * A regtest chainstate whose block tree and chainstate databases live in
+     * memory. Block files still go to a temporary directory.
+     */
+    static final class InMemoryChainstate implements AutoCloseable {
+        final ContextManager.Context context;
+        final ChainstateManager chainman;
+        private final Path dataDir;
+
+        private InMemoryChainstate(ContextManager.Context context, ChainstateManager chainman, Path dataDir) {
+            this.context = context;
+            this.chainman = chainman;
+            this.dataDir = dataDir;
+        }
+
+        static InMemoryChainstate create() throws IOException, KernelTypes.KernelException {
+            disableKernelLogging();
+
+            Path dataDir = Files.createTempDirectory("bitcoinkernel-jmh");
+            Path blocksDir = dataDir.resolve("blocks");
+            Files.createDirectories(blocksDir);
+
+            ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
+            contextOptions.setChainParams(new ChainParameters(ChainType.REGTEST));
+            ContextManager.Context context = new ContextManager.Context(contextOptions);
+
+            ChainstateManagerOptions options = new ChainstateManagerOptions(
+                context,
+                dataDir.toString(),
+                blocksDir.toString()
+            );
+            options.updateBlockTreeDbInMemory(true);
+            options.updateChainstateDbInMemory(true);
+
+            return new InMemoryChainstate(context, new ChainstateManager(context, options), dataDir);
+        }
+
+        void processAll(List<Block> blocks) {
+            boolean[] newBlock = new boolean[1];
+            for (Block block : blocks) {
+                if (!chainman.ProcessBlock(block, newBlock)) {
+                    throw new IllegalStateException("Failed to process benchmark block");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            chainman.close();
+            context.close();
+            try (Stream<Path> paths = Files.walk(dataDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    static List<Block> parseBlocks(List<byte[]> rawBlocks) throws KernelTypes.KernelException {
+        List<Block> blocks = new ArrayList<>(rawBlocks.size());
+        for (byte[] rawBlock : rawBlocks) {
+            blocks.add(new Block(rawBlock));
+        }
+        return blocks;
+    }
+
+    static void closeAll(List<Block> blocks) throws Exception {
+        for (Block block : blocks) {
+            block.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.Chainstate.*;
+
+/**
+ * Reads from a populated in-memory regtest chainstate: block and undo data
+ * from disk, active chain iteration, and hashing of block hash handles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChainstateReadBenchmark {
+
+    private BenchmarkData.InMemoryChainstate chainstate;
+    private Chain chain;
+    private BlockTreeEntry tip;
+    private BlockHash tipHash;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<Block> blocks = BenchmarkData.parseBlocks(BenchmarkData.readBlocks());
+        chainstate = BenchmarkData.InMemoryChainstate.create();
+        chainstate.processAll(blocks);
+        BenchmarkData.closeAll(blocks);
+
+        chain = chainstate.chainman.getChain();
+        tip = chain.getByHeight(chain.getHeight());
+        try (Block tipBlock = chainstate.chainman.readBlock(tip)) {
+            tipHash = tipBlock.getHash();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        tipHash.close();
+        chainstate.close();
+    }
+
+    @Benchmark
+    public long readBlock() throws Exception {
+        try (Block block = chainstate.chainman.readBlock(tip)) {
+            return block.countTransaction();
+        }
+    }
+
+    @Benchmark
+    public long readBlockSpentOutputs() {
+        try (BlockSpentOutputs spentOutputs = chainstate.chainman.readBlockSpentOutputs(tip)) {
+            return spentOutputs.count();
+        }
+    }
+
+    @Benchmark
+    public void iterateChain(Blackhole blackhole) {
+        for (BlockTreeEntry entry : chain) {
+            blackhole.consume(entry);
+        }
+    }
+
+    @Benchmark
+    public int blockHashHashCode() {
+        return tipHash.hashCode();
+    }
+}
@@ -0,0 +1,75 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+import org.bitcoinkernel.jextract.bitcoinkernel_h;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trivial getters through the regular jextract handles against the same
+ * functions linked as critical downcalls. Both sides call the bindings
+ * directly so the difference is only the downcall transition.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CriticalDowncallBenchmark {
+
+    private MemorySegment transaction;
+    private long outputCount;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] rawTransaction = BenchmarkData.hexToBytes(BenchmarkData.P2PKH_TRANSACTION);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment data = arena.allocateFrom(ValueLayout.JAVA_BYTE, rawTransaction);
+            transaction = bitcoinkernel_h.btck_transaction_create(data, data.byteSize());
+        }
+        if (transaction.equals(MemorySegment.NULL)) {
+            throw new IllegalStateException("Failed to create benchmark transaction");
+        }
+        outputCount = bitcoinkernel_h.btck_transaction_count_outputs(transaction);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bitcoinkernel_h.btck_transaction_destroy(transaction);
+    }
+
+    @Benchmark
+    public long countInputsRegular() {
+        return bitcoinkernel_h.btck_transaction_count_inputs(transaction);
+    }
+
+    @Benchmark
+    public long countInputsCritical() {
+        return bitcoinkernel_critical_h.btck_transaction_count_inputs(transaction);
+    }
+
+    @Benchmark
+    public long sumOutputAmountsRegular() {
+        long total = 0;
+        for (long i = 0; i < outputCount; i++) {
+            MemorySegment output = bitcoinkernel_h.btck_transaction_get_output_at(transaction, i);
+            total += bitcoinkernel_h.btck_transaction_output_get_amount(output);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long sumOutputAmountsCritical() {
+        long total = 0;
+        for (long i = 0; i < outputCount; i++) {
+            MemorySegment output = bitcoinkernel_critical_h.btck_transaction_get_output_at(transaction, i);
+            total += bitcoinkernel_critical_h.btck_transaction_output_get_amount(output);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,85 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinkernel.Blocks.*;
+
+/**
+ * {@code ChainstateManager.ProcessBlock} on an in-memory regtest chainstate.
+ *
+ * <p>{@code processChain} validates and connects every block of
+ * {@code tests/block_data.txt} on a fresh chainstate, so it is dominated by
+ * native validation work. {@code processDuplicateBlock} resubmits a block the
+ * chainstate already has, which the kernel rejects early; it tracks the fixed
+ * per-call cost of the binding.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessBlockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ParsedBlocks {
+        List<Block> blocks;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            blocks = BenchmarkData.parseBlocks(BenchmarkData.readBlocks());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            BenchmarkData.closeAll(blocks);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FreshChainstate {
+        BenchmarkData.InMemoryChainstate chainstate;
+
+        @Setup(Level.Invocation)
+        public void setup() throws Exception {
+            chainstate = BenchmarkData.InMemoryChainstate.create();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws Exception {
+            chainstate.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PopulatedChainstate {
+        BenchmarkData.InMemoryChainstate chainstate;
+        Block duplicate;
+        final boolean[] newBlock = new boolean[1];
+
+        @Setup(Level.Trial)
+        public void setup(ParsedBlocks blocks) throws Exception {
+            chainstate = BenchmarkData.InMemoryChainstate.create();
+            chainstate.processAll(blocks.blocks);
+            duplicate = blocks.blocks.get(blocks.blocks.size() / 2);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            chainstate.close();
+        }
+    }
+
+    @Benchmark
+    public void processChain(ParsedBlocks blocks, FreshChainstate fresh) {
+        fresh.chainstate.processAll(blocks.blocks);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean processDuplicateBlock(PopulatedChainstate populated) {
+        return populated.chainstate.chainman.ProcessBlock(populated.duplicate, populated.newBlock);
+    }
+}
@@ -0,0 +1,59 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.bitcoinkernel.KernelTypes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinkernel.KernelData.*;
+import static org.bitcoinkernel.Transactions.*;
+
+/**
+ * Script verification of a single P2PKH input, through {@link ScriptPubkey#verify}
+ * and through {@link Transaction#verifyAllInputs}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptVerifyBenchmark {
+
+    private static final int FLAGS = KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_P2SH |
+                                     KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_DERSIG |
+                                     KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_NULLDUMMY |
+                                     KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_CHECKLOCKTIMEVERIFY |
+                                     KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_CHECKSEQUENCEVERIFY |
+                                     KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_WITNESS;
+
+    private ScriptPubkey scriptPubkey;
+    private Transaction transaction;
+    private TransactionOutput[] spentOutputs;
+    private TransactionOutput[] allSpentOutputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        scriptPubkey = new ScriptPubkey(BenchmarkData.hexToBytes(BenchmarkData.P2PKH_SCRIPT_PUBKEY));
+        transaction = new Transaction(BenchmarkData.hexToBytes(BenchmarkData.P2PKH_TRANSACTION));
+        spentOutputs = new TransactionOutput[0];
+        allSpentOutputs = new TransactionOutput[] {new TransactionOutput(scriptPubkey, 0)};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        allSpentOutputs[0].close();
+        transaction.close();
+        scriptPubkey.close();
+    }
+
+    @Benchmark
+    public int verifyP2pkhInput() throws KernelTypes.KernelException {
+        return scriptPubkey.verify(0, transaction, spentOutputs, 0, FLAGS);
+    }
+
+    @Benchmark
+    public boolean verifyAllInputs() {
+        return transaction.verifyAllInputs(allSpentOutputs, FLAGS).allValid();
+    }
+}
@@ -0,0 +1,60 @@
+package org.bitcoinkernel.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.Transactions.*;
+
+/**
+ * Conversion between serialized bytes and kernel objects.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    private Block block;
+    private byte[] rawTransaction;
+    private Arena arena;
+    private MemorySegment destination;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        List<byte[]> rawBlocks = BenchmarkData.readBlocks();
+        block = new Block(rawBlocks.get(rawBlocks.size() - 1));
+        rawTransaction = BenchmarkData.hexToBytes(BenchmarkData.P2PKH_TRANSACTION);
+        arena = Arena.ofShared();
+        destination = arena.allocate(block.serializedSize());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        block.close();
+        arena.close();
+    }
+
+    @Benchmark
+    public byte[] blockToBytes() {
+        return block.toBytes();
+    }
+
+    @Benchmark
+    public long blockWriteToSegment() {
+        return block.writeTo(destination);
+    }
+
+    @Benchmark
+    public long transactionFromBytes() {
+        try (Transaction transaction = new Transaction(rawTransaction)) {
+            return transaction.countInputs();
+        }
+    }
+}
@@ -29,17 +29,35 @@ public class BitcoinKernel implements AutoCloseable {
     public static final int VERIFY_TAPROOT = KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_TAPROOT;
     public static final int VERIFY_ALL = KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_ALL;
 
+    // Queued notifications per manager before the kernel has to wait for the logger
+    private static final int NOTIFICATION_QUEUE_CAPACITY = 1024;
+
+    private final NotificationsManager.KernelNotificationManager notificationManager;
+    private final NotificationsManager.ValidationInterfaceManager validationManager;
     private final ContextManager.Context context;
     private final ChainstateManager chainstateManager;
     private final Consumer<String> logger;
 
+    /**
+     * Constructs a BitcoinKernel instance without notifications or a
+     * validation interface. The kernel never calls back into Java.
+     *
+     * @param chainType The chain type (e.g., MAINNET, TESTNET, REGTEST, SIGNET, TESTNET_4)
+     * @param dataDir   The path location of the chainstate data (e.g. "$HOME/.bitcoin/")
+     * @param blocksDir The path location for the blocks data (e.g. path_to_datadir/blocks)
+     * @throws KernelTypes.KernelException If initialization fails
+     */
+    public BitcoinKernel(ChainType chainType, Path dataDir, Path blocksDir) throws KernelTypes.KernelException {
+        this(chainType, dataDir, blocksDir, null);
+    }
+
     /**
      * Constructs a BitcoinKernel instance with the specified chain type and data directories.
      *
      * @param chainType The chain type (e.g., MAINNET, TESTNET, REGTEST, SIGNET, TESTNET_4)
      * @param dataDir   The path location of the chainstate data (e.g. "$HOME/.bitcoin/")
      * @param blocksDir The path location for the blocks data (e.g. path_to_datadir/blocks)
-     * @param logger    The logger for kernel events
+     * @param logger    The logger for kernel events, or null to run without notifications
      * @throws KernelTypes.KernelException If initialization fails
      */
     public BitcoinKernel(ChainType chainType, Path dataDir, Path blocksDir, Consumer<String> logger) throws KernelTypes.KernelException {
@@ -52,9 +70,32 @@ public class BitcoinKernel implements AutoCloseable {
         ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
         contextOptions.setChainParams(chainParams);
 
-        // Set up kernel notifications
-        NotificationsManager.KernelNotificationManager notificationManager =
-            new NotificationsManager.KernelNotificationManager(
+        if (logger == null) {
+            this.notificationManager = null;
+            this.validationManager = null;
+        } else {
+            this.notificationManager = newNotificationManager(logger);
+            this.validationManager = newValidationManager(logger);
+            contextOptions.setNotifications(notificationManager);
+            contextOptions.setValidationInterface(validationManager);
+        }
+
+        // Create context
+        this.context = new ContextManager.Context(contextOptions);
+
+        // Create chainstate manager
+        ChainstateManagerOptions chainstateOptions = new ChainstateManagerOptions(
+            context,
+            dataDir.toString(),
+            blocksDir.toString()
+        );
+
+        this.chainstateManager = new ChainstateManager(context, chainstateOptions);
+    }
+
+    // Kernel notifications, logged off the validation thread
+    private static NotificationsManager.KernelNotificationManager newNotificationManager(Consumer<String> logger) {
+        return new NotificationsManager.KernelNotificationManager(
                 new NotificationsManager.KernelNotificationInterfaceCallbacks() {
                     @Override
                     public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
@@ -91,14 +132,14 @@ public class BitcoinKernel implements AutoCloseable {
                     public void fatalError(String message) {
                         logger.accept("Fatal error: " + message);
                     }
-                }
+                },
+                NOTIFICATION_QUEUE_CAPACITY,
+                NotificationsManager.OverflowPolicy.COALESCE
             );
+    }
 
-        contextOptions.setNotifications(notificationManager);
-
-        // Set up validation interface
-        NotificationsManager.ValidationInterfaceManager validationManager =
-            new NotificationsManager.ValidationInterfaceManager(
+    private static NotificationsManager.ValidationInterfaceManager newValidationManager(Consumer<String> logger) {
+        return new NotificationsManager.ValidationInterfaceManager(
                 new NotificationsManager.ValidationInterfaceCallbacks() {
                     @Override
                     public void blockChecked(Block block, BlockValidationState state) {
@@ -120,22 +161,10 @@ public class BitcoinKernel implements AutoCloseable {
                     public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
                         logger.accept("Block disconnected at height: " + blockIndex.getHeight());
                     }
-                }
+                },
+                NOTIFICATION_QUEUE_CAPACITY,
+                NotificationsManager.OverflowPolicy.BLOCK
             );
-
-        contextOptions.setValidationInterface(validationManager);
-
-        // Create context
-        this.context = new ContextManager.Context(contextOptions);
-
-        // Create chainstate manager
-        ChainstateManagerOptions chainstateOptions = new ChainstateManagerOptions(
-            context,
-            dataDir.toString(),
-            blocksDir.toString()
-        );
-
-        this.chainstateManager = new ChainstateManager(context, chainstateOptions);
     }
 
     /**
@@ -180,11 +209,21 @@ public class BitcoinKernel implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        // Queued events reference the block index, deliver them while it exists
+        if (notificationManager != null) {
+            notificationManager.awaitDelivery();
+            validationManager.awaitDelivery();
+        }
         if (chainstateManager != null) {
             chainstateManager.close();
         }
         if (context != null) {
             context.close();
         }
+        // The managers outlive the context, the kernel may call them until it is gone
+        if (notificationManager != null) {
+            notificationManager.close();
+            validationManager.close();
+        }
     }
 }
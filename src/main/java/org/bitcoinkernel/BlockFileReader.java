@@ -0,0 +1,481 @@
+package org.bitcoinkernel;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+
+/**
+ * Reads blocks straight out of Bitcoin Core's {@code blk*.dat} files.
+ *
+ * Every record in a block file is the network magic, the block size as a
+ * 4 byte little endian integer and the serialized block. Since v28 the files
+ * are XORed with the 8 byte key in {@code xor.dat}, applied by file offset.
+ * Files are memory mapped and blocks are created from the mapped bytes, so
+ * an unobfuscated block never passes through the Java heap. Obfuscated blocks
+ * are decoded into scratch memory first.
+ *
+ * Unlike {@link ChainstateManager#ImportBlocks} the caller decides what
+ * happens to each block. Core writes blocks in the order they arrived, so a
+ * block can come before its parent. ProcessBlock rejects such blocks, and
+ * they have to be fed again once the parent is known.
+ *
+ * The files must not be written to while they are mapped, i.e. do not point
+ * this at the blocks directory of a running node. A reader is not thread safe.
+ */
+public class BlockFileReader implements AutoCloseable {
+
+    // Network magic followed by the block size
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 80;
+    private static final int MAX_BLOCK_SERIALIZED_SIZE = 4_000_000;
+    private static final int XOR_KEY_SIZE = 8;
+    // Bytes of a mapped file loaded ahead of the read position
+    static final long PREFETCH_WINDOW = 16L << 20;
+
+    private static final Pattern BLOCK_FILE_NAME = Pattern.compile("blk\\d{5}\\.dat");
+    private static final ValueLayout.OfLong KEY_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final List<Path> files;
+    private final byte[] magic;
+    private final byte[] xorKey;
+    private final long xorWord;
+    private final ExecutorService prefetcher;
+    private final MessageDigest sha256;
+
+    private int fileIndex = -1;
+    private MappedFile current;
+    private MappedFile next;
+    private long position;
+    private long recordLength;
+    private Future<?> prefetch = CompletableFuture.completedFuture(null);
+    private boolean closed;
+
+    private long blocksRead;
+    private long blocksSkipped;
+
+    /**
+     * Reads every {@code blkNNNNN.dat} file in {@code blocksDir}, with the
+     * obfuscation key from its {@code xor.dat} and sequential prefetch.
+     */
+    public BlockFileReader(Path blocksDir, ChainType chainType) throws IOException {
+        this(listBlockFiles(blocksDir), networkMagic(chainType), readXorKey(blocksDir), true);
+    }
+
+    /**
+     * @param files Block files, read in the given order
+     * @param magic The 4 byte network magic, e.g. for a custom signet
+     * @param xorKey The 8 byte obfuscation key, all zero if the files are not obfuscated
+     * @param prefetch Whether to load mapped pages ahead of the read position on a background thread
+     */
+    public BlockFileReader(List<Path> files, byte[] magic, byte[] xorKey, boolean prefetch) {
+        if (magic.length != 4) {
+            throw new IllegalArgumentException("Network magic must be 4 bytes");
+        }
+        if (xorKey.length != XOR_KEY_SIZE) {
+            throw new IllegalArgumentException("Obfuscation key must be " + XOR_KEY_SIZE + " bytes");
+        }
+        this.files = List.copyOf(files);
+        this.magic = magic.clone();
+        this.xorKey = xorKey.clone();
+        this.xorWord = MemorySegment.ofArray(this.xorKey).get(KEY_LAYOUT, 0);
+        this.prefetcher = prefetch ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bitcoinkernel-blockfile-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        try {
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * The message start Bitcoin Core uses for {@code chainType}. Signet is
+     * the default signet, custom signets derive theirs from the challenge.
+     */
+    public static byte[] networkMagic(ChainType chainType) {
+        return switch (chainType) {
+            case MAINNET -> new byte[] {(byte) 0xf9, (byte) 0xbe, (byte) 0xb4, (byte) 0xd9};
+            case TESTNET -> new byte[] {(byte) 0x0b, (byte) 0x11, (byte) 0x09, (byte) 0x07};
+            case TESTNET_4 -> new byte[] {(byte) 0x1c, (byte) 0x16, (byte) 0x3f, (byte) 0x28};
+            case SIGNET -> new byte[] {(byte) 0x0a, (byte) 0x03, (byte) 0xcf, (byte) 0x40};
+            case REGTEST -> new byte[] {(byte) 0xfa, (byte) 0xbf, (byte) 0xb5, (byte) 0xda};
+        };
+    }
+
+    /**
+     * The {@code blkNNNNN.dat} files in {@code blocksDir}, in file number order.
+     */
+    public static List<Path> listBlockFiles(Path blocksDir) throws IOException {
+        try (Stream<Path> entries = Files.list(blocksDir)) {
+            return entries
+                .filter(path -> BLOCK_FILE_NAME.matcher(path.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * The obfuscation key from {@code xor.dat} in {@code blocksDir}. Blocks
+     * directories written before v28 have none, their files are read with an
+     * all zero key.
+     */
+    public static byte[] readXorKey(Path blocksDir) throws IOException {
+        Path keyFile = blocksDir.resolve("xor.dat");
+        if (!Files.exists(keyFile)) {
+            return new byte[XOR_KEY_SIZE];
+        }
+        byte[] key = Files.readAllBytes(keyFile);
+        if (key.length != XOR_KEY_SIZE) {
+            throw new IOException("Unexpected size of " + keyFile + ": " + key.length);
+        }
+        return key;
+    }
+
+    /**
+     * @return The next block, or null once every file has been read
+     */
+    public Block next() throws IOException, KernelTypes.KernelException {
+        return next(null);
+    }
+
+    /**
+     * Like {@link #next()}, but passes over blocks that already have an entry
+     * in the block tree of {@code skipKnown}. Known blocks are recognized by
+     * hashing the header, they are never deserialized. The kernel only has
+     * entries for blocks it was given, so this includes blocks that failed
+     * validation before.
+     */
+    public Block next(ChainstateManager skipKnown) throws IOException, KernelTypes.KernelException {
+        checkClosed();
+        while (true) {
+            if (current == null && !openNextFile()) {
+                return null;
+            }
+            long offset = findRecord();
+            if (offset < 0) {
+                closeCurrentFile();
+                continue;
+            }
+            position = offset + recordLength;
+            prefetchAhead();
+
+            MemorySegment raw = current.data.asSlice(offset, recordLength);
+            if (skipKnown != null && isKnown(skipKnown, raw, offset)) {
+                blocksSkipped++;
+                continue;
+            }
+            blocksRead++;
+            return createBlock(raw, offset);
+        }
+    }
+
+    /**
+     * Feeds every block that is not known to {@code chainman} yet to
+     * {@link ChainstateManager#ProcessBlock}.
+     */
+    public ImportResult importInto(ChainstateManager chainman) throws IOException, KernelTypes.KernelException {
+        long skippedBefore = blocksSkipped;
+        long accepted = 0;
+        long rejected = 0;
+        boolean[] newBlock = new boolean[1];
+        Block next;
+        while ((next = next(chainman)) != null) {
+            try (Block block = next) {
+                if (chainman.ProcessBlock(block, newBlock)) {
+                    accepted++;
+                } else {
+                    rejected++;
+                }
+            }
+        }
+        return new ImportResult(accepted, rejected, blocksSkipped - skippedBefore);
+    }
+
+    /**
+     * Number of blocks returned so far.
+     */
+    public long getBlocksRead() {
+        return blocksRead;
+    }
+
+    /**
+     * Number of blocks passed over because they were already known.
+     */
+    public long getBlocksSkipped() {
+        return blocksSkipped;
+    }
+
+    /**
+     * The file currently being read, or null between files.
+     */
+    public Path getCurrentFile() {
+        return current == null ? null : current.path;
+    }
+
+    // ===== Records =====
+
+    // Scans for the next record in the current file, the same way Core's
+    // LoadExternalBlockFile skips padding and garbage between records
+    private long findRecord() {
+        MemorySegment data = current.data;
+        long size = data.byteSize();
+        while (position + RECORD_HEADER_SIZE <= size) {
+            if (!magicAt(data, position)) {
+                position++;
+                continue;
+            }
+            long length = 0;
+            for (int i = 3; i >= 0; i--) {
+                length = (length << 8) | (byteAt(data, position + 4 + i) & 0xff);
+            }
+            if (length < BLOCK_HEADER_SIZE || length > MAX_BLOCK_SERIALIZED_SIZE) {
+                position++;
+                continue;
+            }
+            long start = position + RECORD_HEADER_SIZE;
+            if (start + length > size) {
+                // Truncated record at the end of the file
+                return -1;
+            }
+            recordLength = length;
+            return start;
+        }
+        return -1;
+    }
+
+    // The plain byte at index of data, which was read from fileOffset
+    private byte byteAt(MemorySegment data, long index, long fileOffset) {
+        return (byte) (data.get(ValueLayout.JAVA_BYTE, index) ^ xorKey[(int) (fileOffset % XOR_KEY_SIZE)]);
+    }
+
+    private boolean magicAt(MemorySegment data, long offset) {
+        for (int i = 0; i < magic.length; i++) {
+            if (byteAt(data, offset + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte byteAt(MemorySegment data, long offset) {
+        return byteAt(data, offset, offset);
+    }
+
+    private boolean isKnown(ChainstateManager chainman, MemorySegment raw, long offset) throws KernelTypes.KernelException {
+        byte[] header = new byte[BLOCK_HEADER_SIZE];
+        MemorySegment.copy(raw, ValueLayout.JAVA_BYTE, 0, header, 0, BLOCK_HEADER_SIZE);
+        for (int i = 0; i < header.length; i++) {
+            header[i] ^= xorKey[(int) ((offset + i) % XOR_KEY_SIZE)];
+        }
+        byte[] hash = sha256.digest(sha256.digest(header));
+        try (BlockHash blockHash = BlockHashValue.fromBytes(hash).toBlockHash()) {
+            return chainman.getBlockTreeEntry(blockHash) != null;
+        }
+    }
+
+    private Block createBlock(MemorySegment raw, long offset) throws KernelTypes.KernelException {
+        if (xorWord == 0) {
+            return Block.from(raw);
+        }
+        try (var scratch = ScratchAllocator.push()) {
+            MemorySegment plain = scratch.allocate(raw.byteSize());
+            plain.copyFrom(raw);
+            deobfuscate(plain, offset);
+            return Block.from(plain);
+        }
+    }
+
+    // XORs bytes that were read from file offset fileOffset onwards, a word at a time where aligned
+    private void deobfuscate(MemorySegment data, long fileOffset) {
+        long size = data.byteSize();
+        long i = 0;
+        for (; i < size && (fileOffset + i) % XOR_KEY_SIZE != 0; i++) {
+            data.set(ValueLayout.JAVA_BYTE, i, byteAt(data, i, fileOffset + i));
+        }
+        for (; i + XOR_KEY_SIZE <= size; i += XOR_KEY_SIZE) {
+            data.set(KEY_LAYOUT, i, data.get(KEY_LAYOUT, i) ^ xorWord);
+        }
+        for (; i < size; i++) {
+            data.set(ValueLayout.JAVA_BYTE, i, byteAt(data, i, fileOffset + i));
+        }
+    }
+
+    // ===== Files =====
+
+    private boolean openNextFile() throws IOException {
+        if (fileIndex + 1 >= files.size()) {
+            return false;
+        }
+        fileIndex++;
+        if (next != null) {
+            current = next;
+            next = null;
+        } else {
+            current = MappedFile.map(files.get(fileIndex));
+        }
+        position = 0;
+        prefetchAhead();
+        return true;
+    }
+
+    private void closeCurrentFile() {
+        awaitPrefetch();
+        current.close();
+        current = null;
+    }
+
+    // Keeps one window loaded ahead of the read position. Once the current
+    // file is loaded to its end the next file is mapped and its first window
+    // loaded, so crossing into it does not stall either.
+    private void prefetchAhead() throws IOException {
+        if (prefetcher == null || !prefetch.isDone()) {
+            return;
+        }
+        MappedFile target = current;
+        if (target.prefetchedUntil >= target.data.byteSize()) {
+            if (fileIndex + 1 >= files.size()) {
+                return;
+            }
+            if (next == null) {
+                next = MappedFile.map(files.get(fileIndex + 1));
+            }
+            target = next;
+            if (target.prefetchedUntil > 0) {
+                return;
+            }
+        } else if (target.prefetchedUntil - position >= PREFETCH_WINDOW / 2) {
+            return;
+        }
+        long start = Math.max(target.prefetchedUntil, target == current ? position : 0);
+        long length = Math.min(PREFETCH_WINDOW, target.data.byteSize() - start);
+        if (length <= 0) {
+            target.prefetchedUntil = target.data.byteSize();
+            return;
+        }
+        MemorySegment window = target.data.asSlice(start, length);
+        target.prefetchedUntil = start + length;
+        prefetch = prefetcher.submit(window::load);
+    }
+
+    private void awaitPrefetch() {
+        try {
+            prefetch.get();
+        } catch (ExecutionException e) {
+            // Prefetching is only a hint, a failed load shows up when the pages are read
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("BlockFileReader has been closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        awaitPrefetch();
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+        if (next != null) {
+            next.close();
+            next = null;
+        }
+    }
+
+    private static final class MappedFile implements AutoCloseable {
+        final Path path;
+        // Shared, the prefetch thread touches the mapping too
+        final Arena arena;
+        final MemorySegment data;
+        long prefetchedUntil;
+
+        private MappedFile(Path path, Arena arena, MemorySegment data) {
+            this.path = path;
+            this.arena = arena;
+            this.data = data;
+        }
+
+        static MappedFile map(Path path) throws IOException {
+            Arena arena = Arena.ofShared();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return new MappedFile(path, arena, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+            } catch (IOException | RuntimeException e) {
+                arena.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            arena.close();
+        }
+    }
+
+    /**
+     * Counts of one {@link #importInto} run.
+     */
+    public static final class ImportResult {
+        private final long accepted;
+        private final long rejected;
+        private final long skipped;
+
+        ImportResult(long accepted, long rejected, long skipped) {
+            this.accepted = accepted;
+            this.rejected = rejected;
+            this.skipped = skipped;
+        }
+
+        /**
+         * Blocks ProcessBlock accepted.
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Blocks ProcessBlock rejected, including blocks read before their parent.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Blocks that were already known and not processed again.
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Open addressing table from a block hash to its height and whether it is on
+ * the active chain, kept in native memory.
+ *
+ * Keys are the four words of a {@link KernelData.Hash256}. Entries are never
+ * removed, a block leaving the active chain is only marked inactive. Not
+ * thread safe: writers need exclusive access. A read racing a write may return
+ * a wrong result but always terminates, so it can run under an optimistic
+ * lock that is validated afterwards.
+ */
+final class BlockHashTable {
+
+    private static final long SLOT_SIZE = 40;
+    private static final long HEIGHT_OFFSET = 32;
+    private static final long STATE_OFFSET = 36;
+    private static final int EMPTY = 0;
+    private static final int ACTIVE = 1;
+    private static final int INACTIVE = 2;
+    private static final int MIN_CAPACITY = 1 << 10;
+
+    // Replaced when the table grows, an optimistic reader may still hold the old one
+    private MemorySegment slots;
+    private int size;
+
+    BlockHashTable(int expected) {
+        this.slots = allocate(capacityFor(expected));
+    }
+
+    /**
+     * @return -1 if the hash is unknown, otherwise the height shifted left by
+     *         one with the low bit set if the block is on the active chain
+     */
+    long find(long w0, long w1, long w2, long w3) {
+        MemorySegment table = slots;
+        int mask = (int) (table.byteSize() / SLOT_SIZE) - 1;
+        int index = index(w0, mask);
+        for (int probes = 0; probes <= mask; probes++) {
+            long base = index * SLOT_SIZE;
+            int state = table.get(ValueLayout.JAVA_INT, base + STATE_OFFSET);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (matches(table, base, w0, w1, w2, w3)) {
+                long height = table.get(ValueLayout.JAVA_INT, base + HEIGHT_OFFSET);
+                return (height << 1) | (state == ACTIVE ? 1 : 0);
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    void put(long w0, long w1, long w2, long w3, int height, boolean active) {
+        if ((size + 1) * 4L > capacity() * 3L) {
+            grow();
+        }
+        if (!insert(slots, w0, w1, w2, w3, height, active ? ACTIVE : INACTIVE)) {
+            size++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int capacity() {
+        return (int) (slots.byteSize() / SLOT_SIZE);
+    }
+
+    // Returns true if the hash was already present
+    private static boolean insert(MemorySegment table, long w0, long w1, long w2, long w3, int height, int state) {
+        int mask = (int) (table.byteSize() / SLOT_SIZE) - 1;
+        int index = index(w0, mask);
+        while (true) {
+            long base = index * SLOT_SIZE;
+            int current = table.get(ValueLayout.JAVA_INT, base + STATE_OFFSET);
+            if (current == EMPTY) {
+                table.set(ValueLayout.JAVA_LONG, base, w0);
+                table.set(ValueLayout.JAVA_LONG, base + 8, w1);
+                table.set(ValueLayout.JAVA_LONG, base + 16, w2);
+                table.set(ValueLayout.JAVA_LONG, base + 24, w3);
+                table.set(ValueLayout.JAVA_INT, base + HEIGHT_OFFSET, height);
+                table.set(ValueLayout.JAVA_INT, base + STATE_OFFSET, state);
+                return false;
+            }
+            if (matches(table, base, w0, w1, w2, w3)) {
+                table.set(ValueLayout.JAVA_INT, base + HEIGHT_OFFSET, height);
+                table.set(ValueLayout.JAVA_INT, base + STATE_OFFSET, state);
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        MemorySegment old = slots;
+        MemorySegment table = allocate(capacity() * 2);
+        for (long base = 0; base < old.byteSize(); base += SLOT_SIZE) {
+            int state = old.get(ValueLayout.JAVA_INT, base + STATE_OFFSET);
+            if (state != EMPTY) {
+                insert(table, old.get(ValueLayout.JAVA_LONG, base), old.get(ValueLayout.JAVA_LONG, base + 8),
+                    old.get(ValueLayout.JAVA_LONG, base + 16), old.get(ValueLayout.JAVA_LONG, base + 24),
+                    old.get(ValueLayout.JAVA_INT, base + HEIGHT_OFFSET), state);
+            }
+        }
+        slots = table;
+    }
+
+    private static boolean matches(MemorySegment table, long base, long w0, long w1, long w2, long w3) {
+        return table.get(ValueLayout.JAVA_LONG, base) == w0
+            && table.get(ValueLayout.JAVA_LONG, base + 8) == w1
+            && table.get(ValueLayout.JAVA_LONG, base + 16) == w2
+            && table.get(ValueLayout.JAVA_LONG, base + 24) == w3;
+    }
+
+    private static int index(long w0, int mask) {
+        // Block hashes are uniform in their first bytes, the last ones hold the proof of work zeros
+        return (int) (w0 ^ (w0 >>> 32)) & mask;
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = Math.max(MIN_CAPACITY, expected * 4L / 3 + 1);
+        if (needed > (1 << 30)) {
+            throw new IllegalArgumentException("Too many blocks for the hash table: " + expected);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private static MemorySegment allocate(int capacity) {
+        // Left to the garbage collector, so readers still holding a replaced table stay safe
+        return Arena.ofAuto().allocate(capacity * SLOT_SIZE, ValueLayout.JAVA_LONG.byteAlignment());
+    }
+}
@@ -0,0 +1,376 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+
+/**
+ * Feeds serialized blocks to {@link ChainstateManager#ProcessBlock} with
+ * deserialization taken off the critical path.
+ *
+ * Blocks are created on a pool of parse workers and handed to a single
+ * processing thread through a reorder buffer, so they reach the kernel in
+ * the order they were submitted no matter which worker finishes first. At
+ * most {@code maxInFlight} blocks are between submission and the end of
+ * processing, further submissions block until one completes.
+ *
+ * Validation interface and notification callbacks fire on the processing
+ * thread, the same as they would on the thread calling ProcessBlock.
+ */
+public class BlockIngestPipeline implements AutoCloseable {
+
+    private final ChainstateManager chainman;
+    private final ExecutorService parsePool;
+    private final boolean ownsParsePool;
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    // Reorder buffer, slot i holds sequence number i modulo its length
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReady = lock.newCondition();
+    private final Pending[] reorderBuffer;
+    private long nextSequence;
+    private long nextToProcess;
+    private boolean closed;
+
+    private final Thread processThread;
+
+    private final StageMetrics admission = new StageMetrics();
+    private final StageMetrics parse = new StageMetrics();
+    private final StageMetrics reorder = new StageMetrics();
+    private final StageMetrics process = new StageMetrics();
+
+    /**
+     * Creates a pipeline with its own pool of {@code parseThreads} workers.
+     */
+    public BlockIngestPipeline(ChainstateManager chainman, int parseThreads, int maxInFlight) {
+        this(chainman, Executors.newFixedThreadPool(parseThreads, runnable -> {
+            Thread thread = new Thread(runnable, "bitcoinkernel-ingest-parse");
+            thread.setDaemon(true);
+            return thread;
+        }), true, maxInFlight);
+    }
+
+    /**
+     * Creates a pipeline that parses on {@code parsePool}. The pool is not
+     * shut down when the pipeline is closed.
+     */
+    public BlockIngestPipeline(ChainstateManager chainman, ExecutorService parsePool, int maxInFlight) {
+        this(chainman, parsePool, false, maxInFlight);
+    }
+
+    private BlockIngestPipeline(ChainstateManager chainman, ExecutorService parsePool, boolean ownsParsePool,
+                                int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one block has to be in flight");
+        }
+        chainman.checkClosed();
+        this.chainman = chainman;
+        this.parsePool = parsePool;
+        this.ownsParsePool = ownsParsePool;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.reorderBuffer = new Pending[maxInFlight];
+        this.processThread = new Thread(this::processLoop, "bitcoinkernel-ingest-process");
+        this.processThread.setDaemon(true);
+        this.processThread.start();
+    }
+
+    /**
+     * Queues a serialized block. Blocks while {@code maxInFlight} blocks are
+     * already in the pipeline.
+     *
+     * @return Completes once the block went through ProcessBlock, or
+     *         exceptionally with a {@link KernelTypes.KernelException} if it
+     *         could not be deserialized
+     */
+    public CompletableFuture<IngestResult> submit(byte[] rawBlock) throws InterruptedException {
+        return submit(MemorySegment.ofArray(rawBlock));
+    }
+
+    /**
+     * Queues a serialized block held in {@code serialized}, e.g. a slice of a
+     * mapped block file. The memory has to stay valid until the returned
+     * future completes.
+     */
+    public CompletableFuture<IngestResult> submit(MemorySegment serialized) throws InterruptedException {
+        long start = System.nanoTime();
+        permits.acquire();
+        Pending pending;
+        lock.lock();
+        try {
+            if (closed) {
+                permits.release();
+                throw new IllegalStateException("BlockIngestPipeline has been closed");
+            }
+            pending = new Pending(nextSequence++, start);
+        } finally {
+            lock.unlock();
+        }
+        pending.admittedNanos = System.nanoTime();
+        admission.record(pending.admittedNanos - start);
+
+        try {
+            parsePool.execute(() -> parse(pending, serialized));
+        } catch (RuntimeException e) {
+            // The sequence number is taken, so the slot still has to be filled
+            pending.failure = e;
+            pending.parsedNanos = System.nanoTime();
+            publish(pending);
+        }
+        return pending.future;
+    }
+
+    private void parse(Pending pending, MemorySegment serialized) {
+        long start = System.nanoTime();
+        try {
+            Block block = Block.from(serialized);
+            pending.block = block;
+            pending.hash = block.getHashValue();
+        } catch (Throwable t) {
+            pending.failure = t;
+        }
+        pending.parsedNanos = System.nanoTime();
+        parse.record(pending.parsedNanos - start);
+        publish(pending);
+    }
+
+    private void publish(Pending pending) {
+        lock.lock();
+        try {
+            reorderBuffer[(int) (pending.sequence % maxInFlight)] = pending;
+            if (pending.sequence == nextToProcess) {
+                slotReady.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void processLoop() {
+        boolean[] newBlock = new boolean[1];
+        while (true) {
+            Pending pending;
+            lock.lock();
+            try {
+                int slot = (int) (nextToProcess % maxInFlight);
+                while (reorderBuffer[slot] == null) {
+                    if (closed && nextToProcess == nextSequence) {
+                        return;
+                    }
+                    slotReady.awaitUninterruptibly();
+                }
+                pending = reorderBuffer[slot];
+                reorderBuffer[slot] = null;
+                nextToProcess++;
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            reorder.record(start - pending.parsedNanos);
+            try {
+                if (pending.failure != null) {
+                    pending.future.completeExceptionally(pending.failure);
+                    continue;
+                }
+                newBlock[0] = false;
+                boolean accepted = chainman.ProcessBlock(pending.block, newBlock);
+                long end = System.nanoTime();
+                process.record(end - start);
+                pending.future.complete(new IngestResult(pending.sequence, pending.hash, accepted, newBlock[0],
+                    pending.admittedNanos - pending.submittedNanos, pending.parsedNanos - pending.admittedNanos,
+                    start - pending.parsedNanos, end - start));
+            } catch (Throwable t) {
+                pending.future.completeExceptionally(t);
+            } finally {
+                if (pending.block != null) {
+                    pending.block.close();
+                }
+                permits.release();
+            }
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Number of blocks submitted but not yet processed.
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * Time submitters spent waiting for room in the pipeline.
+     */
+    public StageMetrics getAdmissionMetrics() {
+        return admission;
+    }
+
+    /**
+     * Time spent deserializing blocks, on the parse workers.
+     */
+    public StageMetrics getParseMetrics() {
+        return parse;
+    }
+
+    /**
+     * Time parsed blocks waited for earlier blocks or for the processing thread.
+     */
+    public StageMetrics getReorderMetrics() {
+        return reorder;
+    }
+
+    /**
+     * Time spent in ProcessBlock.
+     */
+    public StageMetrics getProcessMetrics() {
+        return process;
+    }
+
+    /**
+     * Stops accepting blocks, waits until every submitted block has been
+     * processed and stops the processing thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            closed = true;
+            slotReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        processThread.join();
+        if (ownsParsePool) {
+            parsePool.shutdown();
+            parsePool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static final class Pending {
+        final long sequence;
+        final long submittedNanos;
+        final CompletableFuture<IngestResult> future = new CompletableFuture<>();
+        // Written by the parse worker, read by the processing thread after the lock hand-off
+        long admittedNanos;
+        long parsedNanos;
+        Block block;
+        BlockHashValue hash;
+        Throwable failure;
+
+        Pending(long sequence, long submittedNanos) {
+            this.sequence = sequence;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    /**
+     * Outcome of one block, with the time it spent in each stage.
+     */
+    public static final class IngestResult {
+        private final long sequence;
+        private final BlockHashValue blockHash;
+        private final boolean accepted;
+        private final boolean newBlock;
+        private final long admissionNanos;
+        private final long parseNanos;
+        private final long reorderNanos;
+        private final long processNanos;
+
+        IngestResult(long sequence, BlockHashValue blockHash, boolean accepted, boolean newBlock,
+                     long admissionNanos, long parseNanos, long reorderNanos, long processNanos) {
+            this.sequence = sequence;
+            this.blockHash = blockHash;
+            this.accepted = accepted;
+            this.newBlock = newBlock;
+            this.admissionNanos = admissionNanos;
+            this.parseNanos = parseNanos;
+            this.reorderNanos = reorderNanos;
+            this.processNanos = processNanos;
+        }
+
+        /**
+         * Position of the block in submission order, starting at 0.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        public BlockHashValue getBlockHash() {
+            return blockHash;
+        }
+
+        /**
+         * The return value of ProcessBlock.
+         */
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        public boolean isNewBlock() {
+            return newBlock;
+        }
+
+        public long getAdmissionNanos() {
+            return admissionNanos;
+        }
+
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        public long getReorderNanos() {
+            return reorderNanos;
+        }
+
+        public long getProcessNanos() {
+            return processNanos;
+        }
+    }
+
+    /**
+     * Running latency totals of one pipeline stage.
+     */
+    public static final class StageMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        public double getMeanNanos() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) totalNanos.sum() / n;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.ContextManager.*;
+import static org.bitcoinkernel.NotificationsManager.*;
+import static org.bitcoinkernel.Transactions.*;
+
+/**
+ * Least recently used cache in front of {@link ChainstateManager#readBlock}
+ * and {@link ChainstateManager#readBlockSpentOutputs}, keyed by block hash.
+ *
+ * The cache keeps one reference to each block and spent outputs it holds.
+ * A hit hands out a new reference through the kernel's reference counted
+ * copy, so callers close what they get as usual and eviction never frees
+ * data a caller still uses. Blocks are weighted by their serialized size,
+ * spent outputs by an estimate from their number of coins, and the least
+ * recently used entries are evicted once the total goes over the budget.
+ *
+ * Entries of a block are dropped when it is disconnected, so the context
+ * needs a validation interface with block disconnected events.
+ */
+public class BlockReadCache implements AutoCloseable {
+
+    // Rough serialized size of one spent output: amount, script and height
+    private static final long COIN_WEIGHT = 48;
+
+    private final long maxBytes;
+    private final ValidationInterfaceManager validation;
+    private final Listener listener = new Listener();
+    // Access ordered, guarded by this
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private boolean closed;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    BlockReadCache(Context context, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        ValidationInterfaceManager validation = context.getValidationManager();
+        if (validation == null || !validation.isRegistered(ValidationEvent.BLOCK_DISCONNECTED)) {
+            throw new IllegalStateException("The read cache requires a context with block disconnected events");
+        }
+        this.maxBytes = maxBytes;
+        this.validation = validation;
+        validation.addListener(listener);
+    }
+
+    // Returns a new reference to the cached block, or null
+    synchronized MemorySegment getBlock(BlockHashValue hash) {
+        return get(new Key(hash, false));
+    }
+
+    synchronized MemorySegment getSpentOutputs(BlockHashValue hash) {
+        return get(new Key(hash, true));
+    }
+
+    void putBlock(BlockHashValue hash, Block block) {
+        // Measured outside the lock, it serializes the whole block
+        long size = block.serializedSize();
+        synchronized (this) {
+            put(new Key(hash, false), block.getInner(), size);
+        }
+    }
+
+    void putSpentOutputs(BlockHashValue hash, BlockSpentOutputs spentOutputs) {
+        long coins = 0;
+        for (TransactionSpentOutputs transaction : spentOutputs) {
+            coins += transaction.count();
+        }
+        synchronized (this) {
+            put(new Key(hash, true), spentOutputs.getInner(), Math.max(1, coins) * COIN_WEIGHT);
+        }
+    }
+
+    private MemorySegment get(Key key) {
+        Entry entry = closed ? null : entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return key.spentOutputs ? btck_block_spent_outputs_copy(entry.handle) : btck_block_copy(entry.handle);
+    }
+
+    private void put(Key key, MemorySegment handle, long size) {
+        if (closed || size > maxBytes || entries.containsKey(key)) {
+            return;
+        }
+        MemorySegment reference = key.spentOutputs ? btck_block_spent_outputs_copy(handle) : btck_block_copy(handle);
+        entries.put(key, new Entry(reference, size));
+        weight += size;
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxBytes) {
+            Map.Entry<Key, Entry> victim = eldest.next();
+            eldest.remove();
+            release(victim.getKey(), victim.getValue());
+            evictions.increment();
+        }
+    }
+
+    private synchronized void invalidate(BlockHashValue hash) {
+        for (boolean spentOutputs : new boolean[] {false, true}) {
+            Key key = new Key(hash, spentOutputs);
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                release(key, entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    private void release(Key key, Entry entry) {
+        weight -= entry.size;
+        if (key.spentOutputs) {
+            btck_block_spent_outputs_destroy(entry.handle);
+        } else {
+            btck_block_destroy(entry.handle);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Share of reads served from the cache, 0 before the first read.
+     */
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Entries dropped because their block was disconnected.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Total weight of the cached entries in bytes.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Releases the cached entries. References handed out stay valid.
+     */
+    @Override
+    public void close() {
+        validation.removeListener(listener);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+                release(entry.getKey(), entry.getValue());
+            }
+            entries.clear();
+        }
+    }
+
+    private static final class Key {
+        final BlockHashValue hash;
+        final boolean spentOutputs;
+
+        Key(BlockHashValue hash, boolean spentOutputs) {
+            this.hash = hash;
+            this.spentOutputs = spentOutputs;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && spentOutputs == other.spentOutputs && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode() * 31 + (spentOutputs ? 1 : 0);
+        }
+    }
+
+    private static final class Entry {
+        final MemorySegment handle;
+        final long size;
+
+        Entry(MemorySegment handle, long size) {
+            this.handle = handle;
+            this.size = size;
+        }
+    }
+
+    // Runs on the validation thread
+    private final class Listener implements ValidationInterfaceCallbacks {
+        @Override
+        public void blockChecked(Block block, BlockValidationState state) {
+        }
+
+        @Override
+        public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+        }
+
+        @Override
+        public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+        }
+
+        @Override
+        public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+            invalidate(blockIndex.getBlockHashValue());
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bitcoinkernel.KernelTypes.KernelException.ScriptVerifyError;
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.KernelData.*;
+import static org.bitcoinkernel.Transactions.*;
+
+/**
+ * Re-verifies the scripts of a range of blocks on the active chain.
+ *
+ * Blocks and their spent outputs are read on the calling thread, and every
+ * input of a block is verified as a separate unit of work on a
+ * {@link ForkJoinPool}. Script verification shares no state inside the
+ * kernel, so inputs of one block, and of the next few blocks read ahead,
+ * run fully in parallel.
+ *
+ * The flags apply to every block in the range. Historical blocks were
+ * validated with the flags active at their height, so auditing a range
+ * that spans a soft fork activation needs one call per flag set.
+ */
+public class BlockScriptVerifier {
+
+    // Inputs verified by one leaf task, large enough to amortize the task overhead
+    private static final int INPUTS_PER_TASK = 8;
+
+    private final ChainstateManager chainman;
+    private final int flags;
+    private final ForkJoinPool pool;
+    private final int maxBlocksInFlight;
+
+    public BlockScriptVerifier(ChainstateManager chainman, int flags) {
+        this(chainman, flags, ForkJoinPool.commonPool(), 4);
+    }
+
+    /**
+     * @param chainman          The chainstate manager to read blocks and spent outputs from
+     * @param flags             Script verification flags
+     * @param pool              Pool the input verifications run on
+     * @param maxBlocksInFlight Number of blocks read ahead while earlier ones are verified
+     */
+    public BlockScriptVerifier(ChainstateManager chainman, int flags, ForkJoinPool pool, int maxBlocksInFlight) {
+        ScriptPubkey.checkFlags(flags);
+        if (maxBlocksInFlight < 1) {
+            throw new IllegalArgumentException("At least one block has to be in flight");
+        }
+        this.chainman = chainman;
+        this.flags = flags;
+        this.pool = pool;
+        this.maxBlocksInFlight = maxBlocksInFlight;
+    }
+
+    /**
+     * Verifies every input of the blocks from {@code fromHeight} to
+     * {@code toHeight}, both inclusive.
+     *
+     * @throws KernelTypes.KernelException If a block or its spent outputs cannot be read
+     */
+    public RangeResult verify(int fromHeight, int toHeight) throws KernelTypes.KernelException {
+        chainman.checkClosed();
+        Chain chain = chainman.getChain();
+        int tipHeight = chain.getHeight();
+        if (fromHeight < 0 || toHeight < fromHeight || toHeight > tipHeight) {
+            throw new IllegalArgumentException(
+                "Invalid height range " + fromHeight + ".." + toHeight + " for chain of height " + tipHeight);
+        }
+
+        long start = System.nanoTime();
+        List<BlockResult> results = new ArrayList<>(toHeight - fromHeight + 1);
+        ArrayDeque<PendingBlock> inFlight = new ArrayDeque<>();
+        try {
+            for (int height = fromHeight; height <= toHeight; height++) {
+                PendingBlock pending = PendingBlock.read(chainman, chain.getByHeight(height), flags);
+                inFlight.add(pending);
+                pending.task = pool.submit(new VerifyInputs(pending, 0, pending.inputCount));
+                if (inFlight.size() >= maxBlocksInFlight) {
+                    results.add(inFlight.poll().finish());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                results.add(inFlight.poll().finish());
+            }
+        } finally {
+            // Native memory can only be released once no task reads it anymore
+            for (PendingBlock pending : inFlight) {
+                pending.abandon();
+            }
+        }
+        return new RangeResult(results, System.nanoTime() - start);
+    }
+
+    // A block whose inputs are marshalled for verification
+    private static final class PendingBlock {
+        private final int height;
+        private final long startNanos;
+        private final Block block;
+        private final BlockSpentOutputs spentOutputs;
+        private final Arena arena;
+        private final int flags;
+
+        private final long transactionCount;
+        private final MemorySegment[] transactions;
+        private final MemorySegment[] spentOutputArrays;
+        private final int[] inputTransaction;
+        private final int[] inputIndex;
+        private final int inputCount;
+        private final ScriptVerifyError[] errors;
+
+        private ForkJoinTask<?> task;
+        // Set to make the remaining inputs skip verification
+        private volatile boolean stopped;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private PendingBlock(int height, long startNanos, Block block, BlockSpentOutputs spentOutputs,
+                             Arena arena, int flags) throws KernelTypes.KernelException {
+            this.height = height;
+            this.startNanos = startNanos;
+            this.block = block;
+            this.spentOutputs = spentOutputs;
+            this.arena = arena;
+            this.flags = flags;
+
+            MemorySegment blockPtr = block.getInner();
+            MemorySegment undoPtr = spentOutputs.getInner();
+            this.transactionCount = bitcoinkernel_critical_h.btck_block_count_transactions(blockPtr);
+
+            // The coinbase has no spent outputs, the undo data starts at the second transaction
+            int spendingTransactions = (int) Math.max(0, transactionCount - 1);
+            if (btck_block_spent_outputs_count(undoPtr) != spendingTransactions) {
+                throw new KernelTypes.KernelException("Spent outputs do not match the block at height " + height);
+            }
+            this.transactions = new MemorySegment[spendingTransactions];
+            this.spentOutputArrays = new MemorySegment[spendingTransactions];
+
+            int total = 0;
+            long[] inputCounts = new long[spendingTransactions];
+            for (int t = 0; t < spendingTransactions; t++) {
+                MemorySegment tx = btck_block_get_transaction_at(blockPtr, t + 1);
+                MemorySegment txSpent = btck_block_spent_outputs_get_transaction_spent_outputs_at(undoPtr, t);
+                long inputs = bitcoinkernel_critical_h.btck_transaction_count_inputs(tx);
+                if (btck_transaction_spent_outputs_count(txSpent) != inputs) {
+                    throw new KernelTypes.KernelException("Spent outputs do not match the block at height " + height);
+                }
+                MemorySegment outputs = arena.allocate(ValueLayout.ADDRESS, inputs);
+                for (long i = 0; i < inputs; i++) {
+                    MemorySegment coin = btck_transaction_spent_outputs_get_coin_at(txSpent, i);
+                    outputs.setAtIndex(ValueLayout.ADDRESS, i, btck_coin_get_output(coin));
+                }
+                transactions[t] = tx;
+                spentOutputArrays[t] = outputs;
+                inputCounts[t] = inputs;
+                total = Math.addExact(total, (int) inputs);
+            }
+
+            this.inputCount = total;
+            this.inputTransaction = new int[total];
+            this.inputIndex = new int[total];
+            this.errors = new ScriptVerifyError[total];
+            int next = 0;
+            for (int t = 0; t < spendingTransactions; t++) {
+                for (int i = 0; i < inputCounts[t]; i++) {
+                    inputTransaction[next] = t;
+                    inputIndex[next] = i;
+                    next++;
+                }
+            }
+        }
+
+        static PendingBlock read(ChainstateManager chainman, BlockTreeEntry entry, int flags)
+                throws KernelTypes.KernelException {
+            long start = System.nanoTime();
+            int height = entry.getHeight();
+            Block block = chainman.readBlock(entry);
+            if (block == null) {
+                throw new KernelTypes.KernelException("Failed to read block at height " + height);
+            }
+            BlockSpentOutputs spentOutputs = chainman.readBlockSpentOutputs(entry);
+            if (spentOutputs == null) {
+                block.close();
+                throw new KernelTypes.KernelException("Failed to read spent outputs at height " + height);
+            }
+            // Read by the pool's workers, so it has to be shared
+            Arena arena = Arena.ofShared();
+            try {
+                return new PendingBlock(height, start, block, spentOutputs, arena, flags);
+            } catch (KernelTypes.KernelException | RuntimeException e) {
+                arena.close();
+                spentOutputs.close();
+                block.close();
+                throw e;
+            }
+        }
+
+        void verifyInput(int input) {
+            int t = inputTransaction[input];
+            int index = inputIndex[input];
+            MemorySegment outputs = spentOutputArrays[t];
+            MemorySegment output = outputs.getAtIndex(ValueLayout.ADDRESS, index);
+            MemorySegment script = btck_transaction_output_get_script_pubkey(output);
+            long amount = bitcoinkernel_critical_h.btck_transaction_output_get_amount(output);
+            errors[input] = ScriptPubkey.verifyInput(
+                script, amount, transactions[t], outputs, outputs.byteSize() / ValueLayout.ADDRESS.byteSize(),
+                index, flags);
+        }
+
+        // Workers report failures here instead of throwing, so the root task
+        // only completes once every subtask has
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+            stopped = true;
+        }
+
+        // Waits for the verification and collects the result
+        BlockResult finish() {
+            try {
+                task.join();
+                Throwable thrown = failure.get();
+                if (thrown instanceof RuntimeException e) {
+                    throw e;
+                }
+                if (thrown instanceof Error e) {
+                    throw e;
+                }
+                if (thrown != null) {
+                    throw new RuntimeException("Failed to verify block at height " + height, thrown);
+                }
+                List<InputFailure> failures = new ArrayList<>();
+                for (int i = 0; i < inputCount; i++) {
+                    if (errors[i] != null) {
+                        int t = inputTransaction[i];
+                        TxidValue txid = TxidValue.read(bitcoinkernel_critical_h.btck_transaction_get_txid(transactions[t]));
+                        failures.add(new InputFailure(t + 1, inputIndex[i], txid, errors[i]));
+                    }
+                }
+                return new BlockResult(height, block.getHashValue(), transactionCount, inputCount,
+                    failures, System.nanoTime() - startNanos);
+            } finally {
+                close();
+            }
+        }
+
+        void abandon() {
+            if (task != null) {
+                // Not cancelled, a cancelled task returns from join while its subtasks still run
+                stopped = true;
+                task.quietlyJoin();
+            }
+            close();
+        }
+
+        private void close() {
+            arena.close();
+            spentOutputs.close();
+            block.close();
+        }
+    }
+
+    private static final class VerifyInputs extends RecursiveAction {
+        private final PendingBlock block;
+        private final int from;
+        private final int to;
+
+        VerifyInputs(PendingBlock block, int from, int to) {
+            this.block = block;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= INPUTS_PER_TASK) {
+                try {
+                    for (int i = from; i < to && !block.stopped; i++) {
+                        block.verifyInput(i);
+                    }
+                } catch (Throwable t) {
+                    block.fail(t);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new VerifyInputs(block, from, middle), new VerifyInputs(block, middle, to));
+        }
+    }
+
+    /**
+     * An input whose script did not verify.
+     */
+    public static final class InputFailure {
+        private final int transactionIndex;
+        private final int inputIndex;
+        private final TxidValue txid;
+        private final ScriptVerifyError error;
+
+        InputFailure(int transactionIndex, int inputIndex, TxidValue txid, ScriptVerifyError error) {
+            this.transactionIndex = transactionIndex;
+            this.inputIndex = inputIndex;
+            this.txid = txid;
+            this.error = error;
+        }
+
+        /**
+         * Index of the transaction within its block.
+         */
+        public int getTransactionIndex() {
+            return transactionIndex;
+        }
+
+        public int getInputIndex() {
+            return inputIndex;
+        }
+
+        public TxidValue getTxid() {
+            return txid;
+        }
+
+        public ScriptVerifyError getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return txid + ":" + inputIndex + " " + error;
+        }
+    }
+
+    /**
+     * Outcome of verifying the inputs of one block.
+     */
+    public static final class BlockResult {
+        private final int height;
+        private final BlockHashValue blockHash;
+        private final long transactionCount;
+        private final int inputCount;
+        private final List<InputFailure> failures;
+        private final long elapsedNanos;
+
+        BlockResult(int height, BlockHashValue blockHash, long transactionCount, int inputCount,
+                    List<InputFailure> failures, long elapsedNanos) {
+            this.height = height;
+            this.blockHash = blockHash;
+            this.transactionCount = transactionCount;
+            this.inputCount = inputCount;
+            this.failures = Collections.unmodifiableList(failures);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public BlockHashValue getBlockHash() {
+            return blockHash;
+        }
+
+        public long getTransactionCount() {
+            return transactionCount;
+        }
+
+        public int getInputCount() {
+            return inputCount;
+        }
+
+        public List<InputFailure> getFailures() {
+            return failures;
+        }
+
+        public boolean isValid() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * Time from reading the block until its last input was verified,
+         * including any time spent waiting for the pool.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * Outcome of verifying a range of blocks.
+     */
+    public static final class RangeResult {
+        private final List<BlockResult> blocks;
+        private final long inputCount;
+        private final long elapsedNanos;
+
+        RangeResult(List<BlockResult> blocks, long elapsedNanos) {
+            this.blocks = Collections.unmodifiableList(blocks);
+            this.elapsedNanos = elapsedNanos;
+            long inputs = 0;
+            for (BlockResult block : blocks) {
+                inputs += block.getInputCount();
+            }
+            this.inputCount = inputs;
+        }
+
+        /**
+         * Per-block results, in height order.
+         */
+        public List<BlockResult> getBlocks() {
+            return blocks;
+        }
+
+        public long getInputCount() {
+            return inputCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getInputsPerSecond() {
+            return elapsedNanos == 0 ? 0 : inputCount * 1e9 / elapsedNanos;
+        }
+
+        public double getBlocksPerSecond() {
+            return elapsedNanos == 0 ? 0 : blocks.size() * 1e9 / elapsedNanos;
+        }
+
+        public boolean isValid() {
+            for (BlockResult block : blocks) {
+                if (!block.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+
+/**
+ * Ancestor and fork point queries over the block tree.
+ *
+ * Ancestors of a block on the active chain are looked up by height on the
+ * chain. For the other blocks the skip list the kernel keeps in each block
+ * index is rebuilt on the Java side, keyed by entry address, the first time
+ * a block is asked about: each block points to its parent and to one earlier
+ * ancestor picked so that any ancestor is reached in a logarithmic number of
+ * hops. Only the blocks between a query and the active chain get a node, and
+ * parent and skip pointers never change, so nodes stay valid across reorgs.
+ *
+ * Entries are only valid while the chainstate manager is open. Thread safe.
+ */
+public class BlockTreeAncestry {
+
+    private final Chain chain;
+    // Entry address to its skip list node, only for blocks seen off the active chain
+    private final ConcurrentHashMap<Long, Node> nodes = new ConcurrentHashMap<>();
+
+    public BlockTreeAncestry(ChainstateManager chainman) {
+        chainman.checkClosed();
+        this.chain = chainman.getChain();
+    }
+
+    /**
+     * @throws IllegalArgumentException If {@code height} is negative or above the entry
+     */
+    public BlockTreeEntry getAncestor(BlockTreeEntry entry, int height) {
+        int entryHeight = entry.getHeight();
+        if (height < 0 || height > entryHeight) {
+            throw new IllegalArgumentException("Invalid ancestor height: " + height);
+        }
+        return entry(ancestor(entry.getInner().address(), entryHeight, height));
+    }
+
+    /**
+     * The last block {@code entry} has in common with the active chain, the
+     * entry itself if it is on it.
+     */
+    public BlockTreeEntry findFork(BlockTreeEntry entry) {
+        long address = entry.getInner().address();
+        int height = entry.getHeight();
+        if (isActive(address)) {
+            return entry;
+        }
+        // Ancestors on the active chain form a prefix, search for its end
+        int low = 0;
+        int high = height - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (isActive(ancestor(address, height, mid))) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return entry(ancestor(address, height, low));
+    }
+
+    /**
+     * The highest block both entries descend from, or one of the entries if
+     * it is an ancestor of the other.
+     */
+    public BlockTreeEntry lastCommonAncestor(BlockTreeEntry a, BlockTreeEntry b) {
+        long addressA = a.getInner().address();
+        long addressB = b.getInner().address();
+        int heightA = a.getHeight();
+        int heightB = b.getHeight();
+        int top = Math.min(heightA, heightB);
+        long topA = ancestor(addressA, heightA, top);
+        if (topA == ancestor(addressB, heightB, top)) {
+            return entry(topA);
+        }
+        // Shared ancestors form a prefix, search for its end
+        int low = 0;
+        int high = top - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (ancestor(addressA, heightA, mid) == ancestor(addressB, heightB, mid)) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return entry(ancestor(addressA, heightA, low));
+    }
+
+    /**
+     * Number of blocks with a skip list node.
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    // Same hops as CBlockIndex::GetAncestor, leaving for the active chain as soon as it is reached
+    private long ancestor(long address, int fromHeight, int height) {
+        long walk = address;
+        int heightWalk = fromHeight;
+        while (heightWalk > height) {
+            Node node = nodes.get(walk);
+            if (node == null) {
+                long active = activeAncestor(walk, height);
+                if (active != 0) {
+                    return active;
+                }
+                node = build(walk, heightWalk);
+            }
+            int heightSkip = skipHeight(heightWalk);
+            int heightSkipPrev = skipHeight(heightWalk - 1);
+            if (node.skip != 0 && (heightSkip == height || (heightSkip > height
+                    && !(heightSkipPrev < heightSkip - 2 && heightSkipPrev >= height)))) {
+                walk = node.skip;
+                heightWalk = heightSkip;
+            } else {
+                walk = node.parent;
+                heightWalk--;
+            }
+        }
+        return walk;
+    }
+
+    // Builds the nodes from the entry down to the active chain or a block that has one, lowest first
+    private Node build(long address, int height) {
+        int length = 0;
+        long[] path = new long[16];
+        long walk = address;
+        while (walk != 0 && !nodes.containsKey(walk) && (walk == address || !isActive(walk))) {
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = walk;
+            walk = btck_block_tree_entry_get_previous(MemorySegment.ofAddress(walk)).address();
+        }
+        Node node = null;
+        for (int i = length - 1; i >= 0; i--) {
+            int nodeHeight = height - i;
+            long parent = i == length - 1 ? walk : path[i + 1];
+            long skip = parent == 0 ? 0 : ancestor(parent, nodeHeight - 1, skipHeight(nodeHeight));
+            node = new Node(parent, skip);
+            Node raced = nodes.putIfAbsent(path[i], node);
+            if (raced != null) {
+                node = raced;
+            }
+        }
+        return node;
+    }
+
+    // The ancestor at height through the active chain, or 0 if the entry is not on it
+    private long activeAncestor(long address, int height) {
+        if (!isActive(address)) {
+            return 0;
+        }
+        MemorySegment ancestor = btck_chain_get_by_height(chain.getInner(), height);
+        // A reorg between the calls may have replaced the ancestor, then the skip list is used
+        if (ancestor.address() == 0 || !isActive(address)) {
+            return 0;
+        }
+        return ancestor.address();
+    }
+
+    private boolean isActive(long address) {
+        return btck_chain_contains(chain.getInner(), MemorySegment.ofAddress(address)) != 0;
+    }
+
+    private static BlockTreeEntry entry(long address) {
+        return new BlockTreeEntry(MemorySegment.ofAddress(address));
+    }
+
+    // Same as GetSkipHeight in chain.cpp, the kernel builds its own skip pointers with it
+    private static int skipHeight(int height) {
+        if (height < 2) {
+            return 0;
+        }
+        return (height & 1) != 0 ? invertLowestOne(invertLowestOne(height - 1)) + 1 : invertLowestOne(height);
+    }
+
+    private static int invertLowestOne(int n) {
+        return n & (n - 1);
+    }
+
+    private static final class Node {
+        final long parent;
+        final long skip;
+
+        Node(long parent, long skip) {
+            this.parent = parent;
+            this.skip = skip;
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package org.bitcoinkernel;
 
+import java.io.IOException;
 import java.lang.foreign.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static org.bitcoinkernel.KernelData.*;
 import static org.bitcoinkernel.Transactions.*;
 
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+import org.bitcoinkernel.jextract.bitcoinkernel_h;
 import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
 
 public class Blocks {
@@ -33,19 +42,29 @@ public class Blocks {
             return value;
         }
 
-        public static ValidationMode fromByte(byte value) {
+        // Indexed by the unsigned value, upcalls decode without allocating
+        private static final ValidationMode[] BY_VALUE = new ValidationMode[256];
+
+        static {
             for (ValidationMode mode : values()) {
-                if (mode.value == value) {
-                    return mode;
-                }
+                BY_VALUE[mode.value & 0xFF] = mode;
+            }
+        }
+
+        public static ValidationMode fromByte(byte value) {
+            ValidationMode mode = BY_VALUE[value & 0xFF];
+            if (mode == null) {
+                throw new IllegalArgumentException("Invalid Validation Mode: " + value);
             }
-            throw new IllegalArgumentException("Invalid Validation Mode: " + value);
+            return mode;
         }
     }
 
     // ===== Block Validation State =====
     public static class BlockValidationState {
-        private final MemorySegment inner;
+        private MemorySegment inner;
+        private ValidationMode mode;
+        private BlockValidationResult result;
 
         public enum BlockValidationResult {
             UNSET(0),
@@ -68,13 +87,20 @@ public class Blocks {
                 return value;
             }
 
-            public static BlockValidationResult fromInt(int value) {
+            private static final BlockValidationResult[] BY_VALUE = new BlockValidationResult[256];
+
+            static {
                 for (BlockValidationResult result : values()) {
-                    if (result.value == value) {
-                        return result;
-                    }
+                    BY_VALUE[result.value] = result;
+                }
+            }
+
+            public static BlockValidationResult fromInt(int value) {
+                BlockValidationResult result = value >= 0 && value < BY_VALUE.length ? BY_VALUE[value] : null;
+                if (result == null) {
+                    throw new IllegalArgumentException("Invalid BlockValidationResult: " + value);
                 }
-                throw new IllegalArgumentException("Invalid BlockValidationResult: " + value);
+                return result;
             }
         }
 
@@ -83,14 +109,41 @@ public class Blocks {
                 throw new IllegalArgumentException("Block Validation State cannot be null");
             }
             this.inner = inner;
+            this.mode = null;
+            this.result = null;
+        }
+
+        // A copy of a state that outlives the upcall it was reported in
+        BlockValidationState(ValidationMode mode, BlockValidationResult result) {
+            this.inner = MemorySegment.NULL;
+            this.mode = mode;
+            this.result = result;
+        }
+
+        // A reusable view, pointed at the state of each upcall in turn
+        static BlockValidationState view() {
+            return new BlockValidationState(null, null);
+        }
+
+        BlockValidationState reset(MemorySegment inner) {
+            this.inner = inner;
+            return this;
         }
 
         public ValidationMode getValidationMode() {
+            if (mode != null) {
+                return mode;
+            }
+            checkValid();
             byte mode = btck_block_validation_state_get_validation_mode(inner);
             return ValidationMode.fromByte(mode);
         }
 
         public BlockValidationResult getBlockValidationResult() {
+            if (result != null) {
+                return result;
+            }
+            checkValid();
             int result = btck_block_validation_state_get_block_validation_result(inner);
             return BlockValidationResult.fromInt(result);
         }
@@ -99,6 +152,12 @@ public class Blocks {
             return getValidationMode() == ValidationMode.VALID;
         }
 
+        private void checkValid() {
+            if (isNull(inner)) {
+                throw new IllegalStateException("Block validation state is only valid during the callback");
+            }
+        }
+
         public boolean isInvalid() {
             return getValidationMode() == ValidationMode.INVALID;
         }
@@ -134,7 +193,6 @@ public class Blocks {
     // ===== Block Hash =====
     public static class BlockHash implements AutoCloseable {
         private MemorySegment inner;
-        private final Arena arena;
         private final boolean ownsMemory;
 
         public BlockHash(byte[] hash) throws KernelTypes.KernelException {
@@ -142,9 +200,10 @@ public class Blocks {
                 throw new IllegalStateException("Block Hash length should be 32 bytes");
             }
 
-            this.arena = Arena.ofConfined();
-            MemorySegment hashSegment = arena.allocateFrom(ValueLayout.JAVA_BYTE, hash);
-            this.inner = btck_block_hash_create(hashSegment);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment hashSegment = scratch.allocateFrom(ValueLayout.JAVA_BYTE, hash);
+                this.inner = btck_block_hash_create(hashSegment);
+            }
             if (isNull(inner)) {
                 throw new KernelTypes.KernelException("Failed to instantiate Block Hash object");
             }
@@ -154,25 +213,41 @@ public class Blocks {
         // Internal structure for hashes returned by the API
         BlockHash(MemorySegment inner, boolean ownsMemory) {
             this.inner = inner;
-            this.arena = null;
             this.ownsMemory = ownsMemory;
         }
 
         public byte[] toBytes() {
             checkClosed();
-            try (var tempArena = Arena.ofConfined()) {
-                MemorySegment output = tempArena.allocate(32);
-                btck_block_hash_to_bytes(inner, output);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_block_hash_to_bytes(inner, output);
                 return output.toArray(ValueLayout.JAVA_BYTE);
             }
         }
 
+        /**
+         * Copies the hash to the Java heap.
+         */
+        public BlockHashValue toValue() {
+            checkClosed();
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_block_hash_to_bytes(inner, output);
+                return new BlockHashValue(output);
+            }
+        }
+
         public boolean equals(BlockHash other) {
             checkClosed();
             other.checkClosed();
             return btck_block_hash_equals(inner, other.inner) != 0;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BlockHash other && equals(other);
+        }
+
         public BlockHash copy() {
             checkClosed();
             MemorySegment copied = btck_block_hash_copy(inner);
@@ -184,12 +259,12 @@ public class Blocks {
 
         @Override
         public int hashCode() {
-            byte[] bytes = toBytes();
-            int result = 1;
-            for (byte b: bytes) {
-                result = 31 * result + b;
+            checkClosed();
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_block_hash_to_bytes(inner, output);
+                return Hash256.hashCode(output);
             }
-            return result;
         }
 
         MemorySegment getInner() {
@@ -203,21 +278,67 @@ public class Blocks {
         }
 
         @Override
-        public void close() throws Exception {
+        public void close() {
             if (inner != MemorySegment.NULL) {
-                btck_block_hash_destroy(inner);
+                // Hashes borrowed from a block tree entry belong to the kernel
+                if (ownsMemory) {
+                    btck_block_hash_destroy(inner);
+                }
                 inner = MemorySegment.NULL;
             }
+        }
+    }
+
+    // ===== Block Hash Value =====
+    /**
+     * A block hash copied to the Java heap. Unlike {@link BlockHash} it needs
+     * no closing and can be used as a map key.
+     */
+    public static final class BlockHashValue extends Hash256<BlockHashValue> {
+
+        BlockHashValue(MemorySegment bytes) {
+            super(bytes);
+        }
 
-            if (arena != null) {
-                arena.close();
+        BlockHashValue(long w0, long w1, long w2, long w3) {
+            super(w0, w1, w2, w3);
+        }
+
+        /**
+         * @param bytes The hash in internal byte order, as returned by {@link BlockHash#toBytes()}
+         */
+        public static BlockHashValue fromBytes(byte[] bytes) {
+            return new BlockHashValue(checkBytes(bytes));
+        }
+
+        /**
+         * @param hex The hash as hex in display order
+         */
+        public static BlockHashValue fromHex(CharSequence hex) {
+            return new BlockHashValue(parseHex(hex));
+        }
+
+        /**
+         * Creates a native block hash with the same value, e.g. to look up a
+         * block tree entry.
+         */
+        public BlockHash toBlockHash() throws KernelTypes.KernelException {
+            MemorySegment hash;
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment bytes = scratch.allocate(32);
+                copyTo(bytes);
+                hash = btck_block_hash_create(bytes);
+            }
+            if (isNull(hash)) {
+                throw new KernelTypes.KernelException("Failed to instantiate Block Hash object");
             }
+            return new BlockHash(hash, true);
         }
     }
 
     // ===== Block Tree Entry =====
     public static class BlockTreeEntry {
-        private final MemorySegment inner;
+        private MemorySegment inner;
 
         BlockTreeEntry(MemorySegment inner) {
             if (isNull(inner)) {
@@ -226,7 +347,31 @@ public class Blocks {
             this.inner = inner;
         }
 
+        private BlockTreeEntry() {
+            this.inner = MemorySegment.NULL;
+        }
+
+        // A reusable view, pointed at the entry of each upcall in turn
+        static BlockTreeEntry view() {
+            return new BlockTreeEntry();
+        }
+
+        BlockTreeEntry reset(MemorySegment inner) {
+            this.inner = inner;
+            return this;
+        }
+
+        /**
+         * Entries passed to notification callbacks are only valid during the
+         * callback. The copy stays valid as long as the chainstate manager.
+         */
+        public BlockTreeEntry copy() {
+            checkValid();
+            return new BlockTreeEntry(inner);
+        }
+
         public BlockTreeEntry getPrevious() {
+            checkValid();
             MemorySegment prev = btck_block_tree_entry_get_previous(inner);
             if (isNull(prev)) {
                 return null;
@@ -235,36 +380,101 @@ public class Blocks {
         }
 
         public int getHeight() {
-            return btck_block_tree_entry_get_height(inner);
+            checkValid();
+            return bitcoinkernel_critical_h.btck_block_tree_entry_get_height(inner);
         }
 
         public BlockHash getBlockHash() {
-            MemorySegment hashPtr = btck_block_tree_entry_get_block_hash(inner);
+            checkValid();
+            MemorySegment hashPtr = bitcoinkernel_critical_h.btck_block_tree_entry_get_block_hash(inner);
             return new BlockHash(hashPtr, false);
         }
 
+        public BlockHashValue getBlockHashValue() {
+            checkValid();
+            MemorySegment hashPtr = bitcoinkernel_critical_h.btck_block_tree_entry_get_block_hash(inner);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_block_hash_to_bytes(hashPtr, output);
+                return new BlockHashValue(output);
+            }
+        }
+
         MemorySegment getInner() {
             return inner;
         }
+
+        private void checkValid() {
+            if (isNull(inner)) {
+                throw new IllegalStateException("Block tree entry is only valid during the callback");
+            }
+        }
     }
 
     public static class Block implements AutoCloseable {
         private MemorySegment inner;
-        private final Arena arena;
+        // Views borrow the block of an upcall, closing them does nothing
+        private final boolean view;
 
         public Block(byte[] raw_block) throws KernelTypes.KernelException {
-            this.arena = Arena.ofConfined();
-            MemorySegment blockSegment = arena.allocateFrom(ValueLayout.JAVA_BYTE, raw_block);
-            this.inner = btck_block_create(blockSegment, blockSegment.byteSize());
-            if (isNull(inner)) {
-                arena.close();
-                throw new KernelTypes.KernelException("Failed to create block");
-            }
+            this.inner = create(MemorySegment.ofArray(raw_block));
+            this.view = false;
         }
 
         Block(MemorySegment inner) {
             this.inner = inner;
-            this.arena = null;
+            this.view = false;
+        }
+
+        private Block() {
+            this.inner = MemorySegment.NULL;
+            this.view = true;
+        }
+
+        // A reusable view, pointed at the block of each upcall in turn
+        static Block view() {
+            return new Block();
+        }
+
+        Block reset(MemorySegment inner) {
+            this.inner = inner;
+            return this;
+        }
+
+        /**
+         * Returns a block sharing the same data that has to be closed on its
+         * own. Blocks passed to validation callbacks are only valid during the
+         * callback, copy them to keep them.
+         */
+        public Block copy() {
+            checkClosed();
+            return new Block(btck_block_copy(inner));
+        }
+
+        /**
+         * Deserializes a block from the contents of {@code serialized}, e.g. a
+         * slice of a memory-mapped block file. Native memory is read in place,
+         * it only has to stay valid for the duration of this call.
+         */
+        public static Block from(MemorySegment serialized) throws KernelTypes.KernelException {
+            return new Block(create(serialized));
+        }
+
+        /**
+         * Deserializes a block from the remaining bytes of {@code serialized}.
+         * The buffer's position is not changed.
+         */
+        public static Block from(ByteBuffer serialized) throws KernelTypes.KernelException {
+            return from(Deserializer.remaining(serialized));
+        }
+
+        private static MemorySegment create(MemorySegment serialized) throws KernelTypes.KernelException {
+            // Not critical, a malformed block is logged and the log callback is an upcall
+            MemorySegment block = Deserializer.create(serialized, bitcoinkernel_h::btck_block_create);
+            if (isNull(block)) {
+                throw new KernelTypes.KernelException("Failed to create block");
+            }
+            return block;
         }
 
         public BlockHash getHash() {
@@ -273,8 +483,25 @@ public class Blocks {
             return new BlockHash(hashPtr, true);
         }
 
+        /**
+         * Computes the block hash and copies it to the Java heap, without
+         * handing out a native hash that has to be closed.
+         */
+        public BlockHashValue getHashValue() {
+            checkClosed();
+            MemorySegment hashPtr = btck_block_get_hash(inner);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_block_hash_to_bytes(hashPtr, output);
+                return new BlockHashValue(output);
+            } finally {
+                btck_block_hash_destroy(hashPtr);
+            }
+        }
+
         public long countTransaction() {
-            return btck_block_count_transactions(inner);
+            checkClosed();
+            return bitcoinkernel_critical_h.btck_block_count_transactions(inner);
         }
 
         public Transaction getTransaction(long index) {
@@ -286,36 +513,69 @@ public class Blocks {
             return new Transaction(txPtr);
         }
 
-        public byte[] toBytes() {
+        /**
+         * The transactions of the block in order. Splits by index range for
+         * parallel streams.
+         */
+        public Stream<Transaction> transactions() {
             checkClosed();
+            Spliterator<Transaction> spliterator = new IndexSpliterator<>(0, countTransaction(), false,
+                Spliterator.NONNULL | Spliterator.IMMUTABLE, index -> {
+                    checkClosed();
+                    return new Transaction(btck_block_get_transaction_at(inner, index));
+                });
+            return StreamSupport.stream(spliterator, false);
+        }
 
-            // Use a ByteArrayOutputStream-like approach via Arena
-            try (var arena = Arena.ofConfined()) {
-                // Create a container to collect bytes
-                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-
-                // Create the writer callback
-                org.bitcoinkernel.jextract.btck_WriteBytes.Function writer = (bytes, size, userData) -> {
-                    try {
-                        byte[] data = bytes.reinterpret(size).toArray(ValueLayout.JAVA_BYTE);
-                        baos.write(data);
-                        return 0; // success
-                    } catch (Exception e) {
-                        return 1; // error
-                    }
-                };
-
-                MemorySegment writerSegment = org.bitcoinkernel.jextract.btck_WriteBytes.allocate(writer, arena);
+        public byte[] toBytes() {
+            checkClosed();
+            return Serializer.toBytes(bitcoinkernel_h::btck_block_to_bytes, inner, "block");
+        }
 
-                int result = btck_block_to_bytes(inner, writerSegment, MemorySegment.NULL);
-                if (result != 0) {
-                    throw new RuntimeException("Failed to serialize block");
-                }
+        /**
+         * Computes the size of the serialized block. This runs a full
+         * serialization pass without storing any of the bytes.
+         */
+        public long serializedSize() {
+            checkClosed();
+            return Serializer.serializedSize(bitcoinkernel_h::btck_block_to_bytes, inner, "block");
+        }
+
+        /**
+         * Serializes the block into {@code destination}, starting at offset 0.
+         * The bytes are copied directly from kernel memory.
+         *
+         * @return The number of bytes written
+         * @throws IndexOutOfBoundsException If the destination is smaller than
+         *         {@link #serializedSize()}. Part of it may have been written.
+         */
+        public long writeTo(MemorySegment destination) {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_block_to_bytes, inner, destination, "block");
+        }
+
+        /**
+         * Serializes the block into the remaining space of {@code destination}
+         * and advances its position.
+         *
+         * @return The number of bytes written
+         * @throws java.nio.BufferOverflowException If the remaining space is too small.
+         *         The position is unchanged, but part of the buffer may have been written.
+         */
+        public long writeTo(ByteBuffer destination) {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_block_to_bytes, inner, destination, "block");
+        }
 
-                return baos.toByteArray();
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to serialize block", e);
-            }
+        /**
+         * Serializes the block into a blocking channel. Chunks are handed to
+         * the channel as direct buffers over kernel memory.
+         *
+         * @return The number of bytes written
+         */
+        public long writeTo(WritableByteChannel channel) throws IOException {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_block_to_bytes, inner, channel, "block");
         }
 
         MemorySegment getInner() {
@@ -329,14 +589,11 @@ public class Blocks {
         }
 
         @Override
-        public void close() throws Exception {
-            if (inner != MemorySegment.NULL) {
+        public void close() {
+            if (!view && inner != MemorySegment.NULL) {
                 btck_block_destroy(inner);
                 inner = MemorySegment.NULL;
             }
-            if (arena != null) {
-                arena.close();
-            }
         }
     }
 
@@ -402,6 +659,24 @@ public class Blocks {
             };
         }
 
+        /**
+         * Splits by index range, so a parallel stream reads disjoint parts on
+         * each thread.
+         */
+        @Override
+        public Spliterator<TransactionSpentOutputs> spliterator() {
+            checkClosed();
+            return new IndexSpliterator<>(0, count(), false, Spliterator.NONNULL | Spliterator.IMMUTABLE, index -> {
+                checkClosed();
+                return new TransactionSpentOutputs(
+                    btck_block_spent_outputs_get_transaction_spent_outputs_at(inner, index));
+            });
+        }
+
+        public Stream<TransactionSpentOutputs> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
         MemorySegment getInner() {
             return inner;
         }
@@ -0,0 +1,396 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.KernelData.*;
+import static org.bitcoinkernel.NotificationsManager.*;
+
+/**
+ * Java side copy of the active chain, holding the block hash and the block
+ * tree entry of every height.
+ *
+ * The index is built from the active chain once and then kept current from
+ * block connected and disconnected events, so the context needs a validation
+ * interface with both registered. Hashes are kept as four longs per height
+ * and entries as raw addresses, in plain arrays. Lookups never call into the
+ * kernel. They read optimistically against a version stamp and only take a
+ * read lock if an update got in between, which makes them lock free unless
+ * they race with a block being connected.
+ *
+ * Block hashes are also indexed the other way, in an open addressing table
+ * in native memory, so a hash resolves to its active chain height without a
+ * native block hash handle or a second membership check.
+ */
+public class ChainIndex implements AutoCloseable {
+
+    private static final int WORDS = 4;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final ChainstateManager chainman;
+    private final ValidationInterfaceManager validation;
+    private final Listener listener = new Listener();
+
+    private final StampedLock lock = new StampedLock();
+    // Written under the write lock, read inside a validated optimistic read or the read lock
+    private long[] hashes = new long[0];
+    private long[] entries = new long[0];
+    private int tipHeight = -1;
+    private long version;
+    private BlockHashTable byHash;
+
+    // Events raised while the index is being built, guarded by this
+    private List<Update> pending = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Builds the index from the active chain of {@code chainman}. Takes one
+     * kernel call per height, after that the index is kept current from the
+     * validation interface.
+     */
+    public ChainIndex(ChainstateManager chainman) {
+        chainman.checkClosed();
+        ValidationInterfaceManager validation = chainman.getContext().getValidationManager();
+        if (validation == null || !validation.isRegistered(ValidationEvent.BLOCK_CONNECTED)
+                || !validation.isRegistered(ValidationEvent.BLOCK_DISCONNECTED)) {
+            throw new IllegalStateException(
+                "ChainIndex requires a context with block connected and disconnected events");
+        }
+        this.chainman = chainman;
+        this.validation = validation;
+        // Registered first so nothing connected while walking the chain is missed
+        validation.addListener(listener);
+        build();
+    }
+
+    private void build() {
+        Chain chain = chainman.getChain();
+        int height = chain.getHeight();
+        long[] newHashes = new long[Math.max(INITIAL_CAPACITY, height + 1) * WORDS];
+        long[] newEntries = new long[newHashes.length / WORDS];
+        BlockHashTable table = new BlockHashTable(height + 1);
+        int built = -1;
+        for (int h = 0; h <= height; h++) {
+            // The chain takes cs_main, events raised meanwhile are queued and replayed below
+            MemorySegment entry = btck_chain_get_by_height(chain.getInner(), h);
+            if (entry.address() == 0) {
+                // The chain got shorter while it was walked
+                break;
+            }
+            BlockHashValue hash = new BlockTreeEntry(entry).getBlockHashValue();
+            for (int w = 0; w < WORDS; w++) {
+                newHashes[h * WORDS + w] = hash.word(w);
+            }
+            newEntries[h] = entry.address();
+            table.put(hash.word(0), hash.word(1), hash.word(2), hash.word(3), h, true);
+            built = h;
+        }
+
+        synchronized (this) {
+            long stamp = lock.writeLock();
+            try {
+                hashes = newHashes;
+                entries = newEntries;
+                byHash = table;
+                tipHeight = built;
+                version++;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            for (Update update : pending) {
+                apply(update);
+            }
+            pending = null;
+        }
+    }
+
+    // Called with the monitor held
+    private void apply(Update update) {
+        long stamp = lock.writeLock();
+        try {
+            if (update.connected) {
+                int height = update.height;
+                if (height >= entries.length) {
+                    int capacity = Math.max(height + 1, entries.length * 2);
+                    hashes = Arrays.copyOf(hashes, capacity * WORDS);
+                    entries = Arrays.copyOf(entries, capacity);
+                }
+                for (int w = 0; w < WORDS; w++) {
+                    hashes[height * WORDS + w] = update.hash.word(w);
+                }
+                entries[height] = update.entry;
+                tipHeight = height;
+            } else if (update.height <= tipHeight) {
+                tipHeight = update.height - 1;
+            }
+            byHash.put(update.hash.word(0), update.hash.word(1), update.hash.word(2), update.hash.word(3),
+                update.height, update.connected);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Height of the tip, or -1 while the chain is empty.
+     */
+    public int getHeight() {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        int height = tipHeight;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                height = tipHeight;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Number of updates applied so far. Two lookups that see the same
+     * version saw the same chain.
+     */
+    public long getVersion() {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        long current = version;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                current = version;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the active chain has no block at {@code height}
+     */
+    public BlockHashValue getBlockHash(int height) {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        BlockHashValue hash = readHash(height);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                hash = readHash(height);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (hash == null) {
+            throw new IllegalArgumentException("No entry at height: " + height);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the hash at {@code height} in internal byte order to the start
+     * of {@code destination}, without allocating.
+     *
+     * @return False if the active chain has no block at {@code height}
+     */
+    public boolean copyBlockHash(int height, MemorySegment destination) {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        // A torn read may write garbage first, it is overwritten under the read lock
+        boolean present = writeHash(height, destination);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                present = writeHash(height, destination);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * The entry stays valid as long as the chainstate manager.
+     *
+     * @throws IllegalArgumentException If the active chain has no block at {@code height}
+     */
+    public BlockTreeEntry getEntry(int height) {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        long entry = readEntry(height);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                entry = readEntry(height);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (entry == 0) {
+            throw new IllegalArgumentException("No entry at height: " + height);
+        }
+        return new BlockTreeEntry(MemorySegment.ofAddress(entry));
+    }
+
+    /**
+     * Height of the block if it is on the active chain, or -1.
+     */
+    public int getHeight(BlockHashValue hash) {
+        return lookup(hash.word(0), hash.word(1), hash.word(2), hash.word(3));
+    }
+
+    /**
+     * Height of the block if it is on the active chain, or -1. Does not allocate.
+     *
+     * @param hash The 32 byte hash in internal byte order
+     */
+    public int getHeight(byte[] hash) {
+        if (hash.length != Hash256.SIZE) {
+            throw new IllegalArgumentException("Hash length should be 32 bytes");
+        }
+        return lookup((long) LONG_VIEW.get(hash, 0), (long) LONG_VIEW.get(hash, 8),
+            (long) LONG_VIEW.get(hash, 16), (long) LONG_VIEW.get(hash, 24));
+    }
+
+    /**
+     * Height of the block if it is on the active chain, or -1. Does not allocate.
+     *
+     * @param hash Starts with the 32 byte hash in internal byte order
+     */
+    public int getHeight(MemorySegment hash) {
+        return lookup(Hash256.readWord(hash, 0), Hash256.readWord(hash, 8),
+            Hash256.readWord(hash, 16), Hash256.readWord(hash, 24));
+    }
+
+    /**
+     * Height of the block if it is on the active chain, or -1. Does not allocate.
+     *
+     * @param hex The hash as hex in display order
+     */
+    public int getHeight(CharSequence hex) {
+        if (hex.length() != Hash256.SIZE * 2) {
+            throw new IllegalArgumentException("Hash hex string should be 64 characters");
+        }
+        return lookup(Hash256.hexWord(hex, 0), Hash256.hexWord(hex, 1), Hash256.hexWord(hex, 2),
+            Hash256.hexWord(hex, 3));
+    }
+
+    private int lookup(long w0, long w1, long w2, long w3) {
+        checkClosed();
+        long stamp = lock.tryOptimisticRead();
+        long found = byHash.find(w0, w1, w2, w3);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = byHash.find(w0, w1, w2, w3);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found >= 0 && (found & 1) != 0 ? (int) (found >>> 1) : -1;
+    }
+
+    // Fields may be torn during an optimistic read, the caller validates the result
+    private BlockHashValue readHash(int height) {
+        long[] current = hashes;
+        if (height < 0 || height > tipHeight || (height + 1) * WORDS > current.length) {
+            return null;
+        }
+        int base = height * WORDS;
+        return new BlockHashValue(current[base], current[base + 1], current[base + 2], current[base + 3]);
+    }
+
+    private boolean writeHash(int height, MemorySegment destination) {
+        long[] current = hashes;
+        if (height < 0 || height > tipHeight || (height + 1) * WORDS > current.length) {
+            return false;
+        }
+        int base = height * WORDS;
+        for (int w = 0; w < WORDS; w++) {
+            Hash256.writeWord(destination, w * 8L, current[base + w]);
+        }
+        return true;
+    }
+
+    private long readEntry(int height) {
+        long[] current = entries;
+        if (height < 0 || height > tipHeight || height >= current.length) {
+            return 0;
+        }
+        return current[height];
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("ChainIndex has been closed");
+        }
+    }
+
+    /**
+     * Stops following the chain.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        validation.removeListener(listener);
+    }
+
+    private void onUpdate(Update update) {
+        synchronized (this) {
+            if (pending != null) {
+                pending.add(update);
+            } else {
+                apply(update);
+            }
+        }
+    }
+
+    private static final class Update {
+        final boolean connected;
+        final int height;
+        final long entry;
+        final BlockHashValue hash;
+
+        Update(boolean connected, int height, long entry, BlockHashValue hash) {
+            this.connected = connected;
+            this.height = height;
+            this.entry = entry;
+            this.hash = hash;
+        }
+    }
+
+    // Runs on the validation thread, the entry passed in is only valid during the call
+    private final class Listener implements ValidationInterfaceCallbacks {
+        @Override
+        public void blockChecked(Block block, BlockValidationState state) {
+        }
+
+        @Override
+        public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+        }
+
+        @Override
+        public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+            onUpdate(new Update(true, blockIndex.getHeight(), blockIndex.getInner().address(),
+                blockIndex.getBlockHashValue()));
+        }
+
+        @Override
+        public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+            onUpdate(new Update(false, blockIndex.getHeight(), blockIndex.getInner().address(),
+                blockIndex.getBlockHashValue()));
+        }
+    }
+}
@@ -2,12 +2,28 @@ package org.bitcoinkernel;
 
 import java.lang.foreign.*;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
 import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.Blocks.BlockValidationState.*;
 import static org.bitcoinkernel.ContextManager.*;
+import static org.bitcoinkernel.NotificationsManager.*;
 
 
 public class Chainstate {
@@ -45,13 +61,20 @@ public class Chainstate {
             return value;
         }
 
-        public static SynchronizationState fromByte (byte value) {
-            for (SynchronizationState state: values()) {
-                if (state.value == value) {
-                    return state;
-                }
+        private static final SynchronizationState[] BY_VALUE = new SynchronizationState[256];
+
+        static {
+            for (SynchronizationState state : values()) {
+                BY_VALUE[state.value & 0xFF] = state;
+            }
+        }
+
+        public static SynchronizationState fromByte(byte value) {
+            SynchronizationState state = BY_VALUE[value & 0xFF];
+            if (state == null) {
+                throw new IllegalArgumentException("Unknown synchronization state: " + value);
             }
-            throw new IllegalArgumentException("Unknown synchronization state: " + value);
+            return state;
         }
     }
 
@@ -65,13 +88,20 @@ public class Chainstate {
             this.value = (byte) value;
         }
 
+        private static final Warning[] BY_VALUE = new Warning[256];
+
+        static {
+            for (Warning warning : values()) {
+                BY_VALUE[warning.value & 0xFF] = warning;
+            }
+        }
+
         public static Warning fromByte(byte value) {
-            for (Warning warning: values()) {
-                if (warning.value == value) {
-                    return warning;
-                }
+            Warning warning = BY_VALUE[value & 0xFF];
+            if (warning == null) {
+                throw new IllegalArgumentException("Invalid Warning: " + value);
             }
-            throw new IllegalArgumentException("Invalid Warning: " + value);
+            return warning;
         }
     }
 
@@ -102,20 +132,19 @@ public class Chainstate {
     // ===== Chainstate Manager Options =====
     public static class ChainstateManagerOptions implements AutoCloseable {
         private MemorySegment inner;
-        private final Arena arena;
 
         public ChainstateManagerOptions(Context context, String dataDir, String blocksDir) throws KernelTypes.KernelException {
-            this.arena = Arena.ofConfined();
-
-            MemorySegment cDataDir = arena.allocateFrom(ValueLayout.JAVA_BYTE, dataDir.getBytes(StandardCharsets.UTF_8));
-            MemorySegment cBlocksDir = arena.allocateFrom(ValueLayout.JAVA_BYTE, blocksDir.getBytes(StandardCharsets.UTF_8));
-
-            this.inner = btck_chainstate_manager_options_create(
-                    context.getInner(),
-                    cDataDir, cDataDir.byteSize(),
-                    cBlocksDir, cBlocksDir.byteSize());
+            // The kernel copies both paths, so they only have to live for the call
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment cDataDir = scratch.allocateFrom(ValueLayout.JAVA_BYTE, dataDir.getBytes(StandardCharsets.UTF_8));
+                MemorySegment cBlocksDir = scratch.allocateFrom(ValueLayout.JAVA_BYTE, blocksDir.getBytes(StandardCharsets.UTF_8));
+
+                this.inner = btck_chainstate_manager_options_create(
+                        context.getInner(),
+                        cDataDir, cDataDir.byteSize(),
+                        cBlocksDir, cBlocksDir.byteSize());
+            }
             if (inner == MemorySegment.NULL) {
-                arena.close();
                 throw new KernelTypes.KernelException("Failed to create chainstate manager options");
             }
         }
@@ -166,21 +195,24 @@ public class Chainstate {
                 btck_chainstate_manager_options_destroy(inner);
                 inner = MemorySegment.NULL;
             }
-
-            if (arena != null) {
-                arena.close();
-            }
         }
     }
 
     public static class ChainstateManager implements AutoCloseable {
         private MemorySegment inner;
+        private final Context context;
+        private Thread activeImport;
+        // Created by the first processBlockAsync call
+        private ExecutorService processExecutor;
+        private BlockCorrelator correlator;
+        private volatile BlockReadCache readCache;
 
         public ChainstateManager(Context context, ChainstateManagerOptions options) throws KernelTypes.KernelException {
             this.inner = btck_chainstate_manager_create(options.getInner());
             if (inner == MemorySegment.NULL) {
                 throw new KernelTypes.KernelException("Failed to allocate Chainstate Manager object");
             }
+            this.context = context;
         }
 
         public boolean ImportBlocks(String[] paths) {
@@ -194,12 +226,12 @@ public class Chainstate {
                 ) == 0;
             }
 
-            try (var arena = Arena.ofConfined()) {
-                MemorySegment pathPtrs = arena.allocate(
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment pathPtrs = scratch.allocate(
                         ValueLayout.ADDRESS,
                         paths.length
                 );
-                MemorySegment pathLens = arena.allocate(
+                MemorySegment pathLens = scratch.allocate(
                         ValueLayout.JAVA_LONG,
                         paths.length
                 );
@@ -207,7 +239,7 @@ public class Chainstate {
                 // Convert each path to C String
                 for (int i = 0; i < paths.length; ++i) {
                     byte[] pathBytes = paths[i].getBytes(StandardCharsets.UTF_8);
-                    MemorySegment pathSegment = arena.allocateFrom(ValueLayout.JAVA_BYTE, pathBytes);
+                    MemorySegment pathSegment = scratch.allocateFrom(ValueLayout.JAVA_BYTE, pathBytes);
                     pathPtrs.setAtIndex(ValueLayout.ADDRESS, i, pathSegment);
                     pathLens.setAtIndex(ValueLayout.JAVA_LONG, i, pathBytes.length);
                 }
@@ -216,12 +248,78 @@ public class Chainstate {
             }
         }
 
+        public CompletableFuture<Boolean> importBlocksAsync(String[] paths) {
+            return importBlocksAsync(paths, null, null);
+        }
+
+        /**
+         * Runs {@link #ImportBlocks} on a new platform thread.
+         *
+         * Cancelling the returned future or running past the deadline
+         * interrupts the context. The kernel's interrupt is permanent, once it
+         * is raised the context and this manager stop validating and have to
+         * be recreated to carry on. Whatever was flushed to disk is kept.
+         *
+         * @param progress Receives progress, header tip and block tip events
+         *                 while the import runs, on the thread that raised them.
+         *                 May be null, otherwise the context needs notifications.
+         * @param deadline Maximum duration of the import, or null
+         * @return Completes with the result of ImportBlocks, or exceptionally
+         *         if the progress consumer threw
+         */
+        public CompletableFuture<Boolean> importBlocksAsync(String[] paths, Consumer<ImportProgress> progress,
+                                                            Duration deadline) {
+            checkClosed();
+            KernelNotificationManager notifications = context.getNotificationManager();
+            if (progress != null && (notifications == null
+                    || !notifications.isRegistered(KernelNotification.BLOCK_TIP))) {
+                throw new IllegalStateException("Import progress requires a context with block tip notifications");
+            }
+            ImportTracker tracker = progress == null ? null : new ImportTracker(progress);
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            Thread thread = Thread.ofPlatform().name("bitcoinkernel-import").daemon().unstarted(() -> {
+                if (tracker != null) {
+                    notifications.addListener(tracker);
+                }
+                try {
+                    boolean result = ImportBlocks(paths);
+                    if (tracker != null && tracker.failure != null) {
+                        future.completeExceptionally(tracker.failure);
+                    } else {
+                        future.complete(result);
+                    }
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    if (tracker != null) {
+                        notifications.removeListener(tracker);
+                    }
+                }
+            });
+            synchronized (this) {
+                if (activeImport != null && activeImport.isAlive()) {
+                    throw new IllegalStateException("An import is already running");
+                }
+                activeImport = thread;
+            }
+            if (deadline != null) {
+                future.orTimeout(deadline.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            future.whenComplete((result, failure) -> {
+                if (failure instanceof CancellationException || failure instanceof TimeoutException) {
+                    context.interrupt();
+                }
+            });
+            thread.start();
+            return future;
+        }
+
         public boolean ProcessBlock(Block block, boolean[] newBlock) {
             checkClosed();
             block.checkClosed();
 
-            try (var arena = Arena.ofConfined()) {
-                MemorySegment newBlockPtr = arena.allocate(ValueLayout.JAVA_INT);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment newBlockPtr = scratch.allocate(ValueLayout.JAVA_INT);
                 int result = btck_chainstate_manager_process_block(inner, block.getInner(), newBlockPtr);
 
                 if (newBlock != null && newBlock.length > 0) {
@@ -232,6 +330,66 @@ public class Chainstate {
             }
         }
 
+        /**
+         * Runs {@link #ProcessBlock} on a dedicated platform thread and
+         * completes with the verdict the validation interface reported for
+         * the block. Blocks are processed in the order they were submitted.
+         *
+         * The block is copied, so the caller may close it right away. The
+         * context needs a validation interface.
+         */
+        public CompletableFuture<BlockValidationOutcome> processBlockAsync(Block block) {
+            checkClosed();
+            block.checkClosed();
+            Block owned = block.copy();
+            CompletableFuture<BlockValidationOutcome> future = new CompletableFuture<>();
+            try {
+                processExecutor().execute(() -> {
+                    try (owned) {
+                        future.complete(processCorrelated(owned));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (RuntimeException e) {
+                owned.close();
+                throw e;
+            }
+            return future;
+        }
+
+        private synchronized ExecutorService processExecutor() {
+            if (processExecutor == null) {
+                ValidationInterfaceManager validation = context.getValidationManager();
+                if (validation == null || !validation.isRegistered(ValidationEvent.BLOCK_CHECKED)) {
+                    throw new IllegalStateException("processBlockAsync requires a context with block checked events");
+                }
+                correlator = new BlockCorrelator();
+                validation.addListener(correlator);
+                processExecutor = Executors.newSingleThreadExecutor(
+                    Thread.ofPlatform().name("bitcoinkernel-process").daemon().factory());
+            }
+            return processExecutor;
+        }
+
+        private BlockValidationOutcome processCorrelated(Block block) {
+            BlockHashValue hash = block.getHashValue();
+            BlockCorrelator.Verdict verdict = correlator.begin(hash);
+            boolean[] newBlock = new boolean[1];
+            boolean accepted;
+            try {
+                accepted = ProcessBlock(block, newBlock);
+            } finally {
+                correlator.end(hash);
+            }
+            return new BlockValidationOutcome(hash, accepted, newBlock[0], verdict.mode, verdict.result,
+                verdict.connectedHeight);
+        }
+
+        Context getContext() {
+            return context;
+        }
+
         public Chain getChain() {
             checkClosed();
             MemorySegment chainPtr = btck_chainstate_manager_get_active_chain(inner);
@@ -242,29 +400,78 @@ public class Chainstate {
             checkClosed();
             blockHash.checkClosed();
             MemorySegment entry = btck_chainstate_manager_get_block_tree_entry_by_hash(inner, blockHash.getInner());
-            if (entry == null) {
+            if (entry.address() == 0) {
                 return null;
             }
             return new BlockTreeEntry(entry);
         }
 
+        /**
+         * Puts a cache in front of {@link #readBlock} and
+         * {@link #readBlockSpentOutputs}. The context needs a validation
+         * interface with block disconnected events.
+         *
+         * @param maxBytes Budget for the cached blocks and spent outputs
+         */
+        public synchronized BlockReadCache enableReadCache(long maxBytes) {
+            checkClosed();
+            if (readCache != null) {
+                throw new IllegalStateException("The read cache is already enabled");
+            }
+            readCache = new BlockReadCache(context, maxBytes);
+            return readCache;
+        }
+
+        /**
+         * @return Null unless {@link #enableReadCache} was called
+         */
+        public BlockReadCache getReadCache() {
+            return readCache;
+        }
+
         public Block readBlock(BlockTreeEntry entry) {
             checkClosed();
+            BlockReadCache cache = readCache;
+            BlockHashValue hash = null;
+            if (cache != null) {
+                hash = entry.getBlockHashValue();
+                MemorySegment cached = cache.getBlock(hash);
+                if (cached != null) {
+                    return new Block(cached);
+                }
+            }
             MemorySegment blockPtr = btck_block_read(inner, entry.getInner());
             if (blockPtr == MemorySegment.NULL) {
                 return null;
             }
 
-            return new Block(blockPtr);
+            Block block = new Block(blockPtr);
+            if (cache != null) {
+                cache.putBlock(hash, block);
+            }
+            return block;
         }
 
         public BlockSpentOutputs readBlockSpentOutputs(BlockTreeEntry entry) {
             checkClosed();
+            BlockReadCache cache = readCache;
+            BlockHashValue hash = null;
+            if (cache != null) {
+                hash = entry.getBlockHashValue();
+                MemorySegment cached = cache.getSpentOutputs(hash);
+                if (cached != null) {
+                    return new BlockSpentOutputs(cached);
+                }
+            }
             MemorySegment undoPtr = btck_block_spent_outputs_read(inner, entry.getInner());
             if (undoPtr == MemorySegment.NULL) {
                 return null;
             }
-            return new BlockSpentOutputs(undoPtr);
+            BlockSpentOutputs spentOutputs = new BlockSpentOutputs(undoPtr);
+            if (cache != null) {
+                cache.putSpentOutputs(hash, spentOutputs);
+            }
+            return spentOutputs;
         }
 
         void checkClosed() {
@@ -275,6 +482,28 @@ public class Chainstate {
 
         @Override
         public void close() throws Exception {
+            Thread importThread;
+            synchronized (this) {
+                importThread = activeImport;
+            }
+            if (importThread != null && importThread.isAlive()) {
+                // The import would run on a destroyed manager, stop it first
+                context.interrupt();
+                importThread.join();
+            }
+            ExecutorService executor;
+            synchronized (this) {
+                executor = processExecutor;
+            }
+            if (executor != null) {
+                // Queued blocks are still processed
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                context.getValidationManager().removeListener(correlator);
+            }
+            if (readCache != null) {
+                readCache.close();
+            }
             if (inner != MemorySegment.NULL) {
                 btck_chainstate_manager_destroy(inner);
                 inner = MemorySegment.NULL;
@@ -282,6 +511,344 @@ public class Chainstate {
         }
     }
 
+    // ===== Import Progress =====
+    public static final class ImportProgress {
+        public enum Kind {
+            PROGRESS,
+            HEADER_TIP,
+            BLOCK_TIP
+        }
+
+        private final Kind kind;
+        private final SynchronizationState state;
+        private final String title;
+        private final int progressPercent;
+        private final long headerHeight;
+        private final long blockHeight;
+        private final double verificationProgress;
+        private final double blocksPerSecond;
+        private final Duration elapsed;
+        private final Duration eta;
+
+        ImportProgress(Kind kind, SynchronizationState state, String title, int progressPercent, long headerHeight,
+                       long blockHeight, double verificationProgress, double blocksPerSecond, Duration elapsed,
+                       Duration eta) {
+            this.kind = kind;
+            this.state = state;
+            this.title = title;
+            this.progressPercent = progressPercent;
+            this.headerHeight = headerHeight;
+            this.blockHeight = blockHeight;
+            this.verificationProgress = verificationProgress;
+            this.blocksPerSecond = blocksPerSecond;
+            this.elapsed = elapsed;
+            this.eta = eta;
+        }
+
+        /**
+         * The notification that produced this event.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Synchronization state of the last tip notification, null before the first one.
+         */
+        public SynchronizationState getState() {
+            return state;
+        }
+
+        /**
+         * Title of the last progress notification, e.g. "Loading block index".
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        public int getProgressPercent() {
+            return progressPercent;
+        }
+
+        /**
+         * Height of the best header, -1 until one was reported.
+         */
+        public long getHeaderHeight() {
+            return headerHeight;
+        }
+
+        /**
+         * Height of the chain tip, -1 until one was reported.
+         */
+        public long getBlockHeight() {
+            return blockHeight;
+        }
+
+        /**
+         * Estimated fraction of the chain's transactions that have been
+         * verified, NaN until a block tip was reported.
+         */
+        public double getVerificationProgress() {
+            return verificationProgress;
+        }
+
+        /**
+         * Average rate at which the tip advanced since the first block tip of the import.
+         */
+        public double getBlocksPerSecond() {
+            return blocksPerSecond;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Time left, extrapolated from the verification progress made during
+         * the import. Null while there is not enough to go on.
+         */
+        public Duration getEta() {
+            return eta;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ImportProgress{kind=%s, height=%d, headers=%d, progress=%.4f, blocks/s=%.1f, eta=%s}",
+                kind, blockHeight, headerHeight, verificationProgress, blocksPerSecond, eta);
+        }
+    }
+
+    // Turns the kernel notifications raised during an import into progress events
+    private static final class ImportTracker implements KernelNotificationInterfaceCallbacks {
+        private final Consumer<ImportProgress> consumer;
+        private final long startNanos = System.nanoTime();
+        // The first exception thrown by the consumer, it must not unwind into the kernel
+        volatile RuntimeException failure;
+
+        private SynchronizationState state;
+        private String title = "";
+        private int progressPercent;
+        private long headerHeight = -1;
+        private long blockHeight = -1;
+        private double verificationProgress = Double.NaN;
+        private long firstHeight = -1;
+        private long firstNanos;
+        private double firstProgress;
+
+        ImportTracker(Consumer<ImportProgress> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public synchronized void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+            this.state = state;
+            this.verificationProgress = verificationProgress;
+            if (blockIndex != null) {
+                blockHeight = blockIndex.getHeight();
+                if (firstHeight < 0) {
+                    firstHeight = blockHeight;
+                    firstNanos = System.nanoTime();
+                    firstProgress = verificationProgress;
+                }
+            }
+            publish(ImportProgress.Kind.BLOCK_TIP);
+        }
+
+        @Override
+        public synchronized void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+            if (presync) {
+                return;
+            }
+            this.state = state;
+            headerHeight = height;
+            publish(ImportProgress.Kind.HEADER_TIP);
+        }
+
+        @Override
+        public synchronized void progress(String title, int progressPercent, boolean resumePossible) {
+            this.title = title;
+            this.progressPercent = progressPercent;
+            publish(ImportProgress.Kind.PROGRESS);
+        }
+
+        @Override
+        public void warningSet(Warning warning, String message) {
+        }
+
+        @Override
+        public void warningUnset(Warning warning) {
+        }
+
+        @Override
+        public void flushError(String message) {
+        }
+
+        @Override
+        public void fatalError(String message) {
+        }
+
+        private void publish(ImportProgress.Kind kind) {
+            if (failure != null) {
+                return;
+            }
+            long now = System.nanoTime();
+            double blocksPerSecond = 0;
+            Duration eta = null;
+            if (firstHeight >= 0 && now > firstNanos) {
+                double seconds = (now - firstNanos) / 1e9;
+                blocksPerSecond = (blockHeight - firstHeight) / seconds;
+                double progressPerSecond = (verificationProgress - firstProgress) / seconds;
+                if (progressPerSecond > 0) {
+                    eta = Duration.ofNanos((long) (Math.max(0, 1 - verificationProgress) / progressPerSecond * 1e9));
+                }
+            }
+            try {
+                consumer.accept(new ImportProgress(kind, state, title, progressPercent, headerHeight, blockHeight,
+                    verificationProgress, blocksPerSecond, Duration.ofNanos(now - startNanos), eta));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // ===== Block Validation Outcome =====
+    public static final class BlockValidationOutcome {
+        private final BlockHashValue blockHash;
+        private final boolean accepted;
+        private final boolean newBlock;
+        private final ValidationMode validationMode;
+        private final BlockValidationResult validationResult;
+        private final int connectedHeight;
+
+        BlockValidationOutcome(BlockHashValue blockHash, boolean accepted, boolean newBlock,
+                               ValidationMode validationMode, BlockValidationResult validationResult,
+                               int connectedHeight) {
+            this.blockHash = blockHash;
+            this.accepted = accepted;
+            this.newBlock = newBlock;
+            this.validationMode = validationMode;
+            this.validationResult = validationResult;
+            this.connectedHeight = connectedHeight;
+        }
+
+        public BlockHashValue getBlockHash() {
+            return blockHash;
+        }
+
+        /**
+         * The return value of ProcessBlock.
+         */
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        public boolean isNewBlock() {
+            return newBlock;
+        }
+
+        /**
+         * Whether the kernel reported a validation state for the block. It
+         * does not for blocks it already had, or that were stored without
+         * being connected.
+         */
+        public boolean isChecked() {
+            return validationMode != null;
+        }
+
+        /**
+         * Mode of the reported validation state, null if the block was not checked.
+         */
+        public ValidationMode getValidationMode() {
+            return validationMode;
+        }
+
+        /**
+         * Result of the reported validation state, null if the block was not checked.
+         */
+        public BlockValidationResult getBlockValidationResult() {
+            return validationResult;
+        }
+
+        /**
+         * Whether the block was connected to the active chain while it was processed.
+         */
+        public boolean isConnected() {
+            return connectedHeight >= 0;
+        }
+
+        /**
+         * Height the block was connected at, -1 if it was not connected.
+         */
+        public int getConnectedHeight() {
+            return connectedHeight;
+        }
+
+        /**
+         * Accepted and not reported invalid.
+         */
+        public boolean isValid() {
+            return accepted && (validationMode == null || validationMode == ValidationMode.VALID);
+        }
+
+        @Override
+        public String toString() {
+            return "BlockValidationOutcome{hash=" + blockHash + ", accepted=" + accepted + ", newBlock=" + newBlock +
+                ", mode=" + validationMode + ", result=" + validationResult + ", height=" + connectedHeight + "}";
+        }
+    }
+
+    // Attributes validation interface upcalls to the blocks processBlockAsync is processing
+    private static final class BlockCorrelator implements ValidationInterfaceCallbacks {
+        private final Map<BlockHashValue, Verdict> pending = new ConcurrentHashMap<>();
+
+        static final class Verdict {
+            // Written by the upcalls on the processing thread before ProcessBlock returns
+            ValidationMode mode;
+            BlockValidationResult result;
+            int connectedHeight = -1;
+        }
+
+        Verdict begin(BlockHashValue hash) {
+            Verdict verdict = new Verdict();
+            pending.put(hash, verdict);
+            return verdict;
+        }
+
+        void end(BlockHashValue hash) {
+            pending.remove(hash);
+        }
+
+        private Verdict lookup(Block block) {
+            // Most upcalls are for blocks processed elsewhere, avoid hashing them
+            return pending.isEmpty() ? null : pending.get(block.getHashValue());
+        }
+
+        @Override
+        public void blockChecked(Block block, BlockValidationState state) {
+            Verdict verdict = lookup(block);
+            if (verdict != null) {
+                verdict.mode = state.getValidationMode();
+                verdict.result = state.getBlockValidationResult();
+            }
+        }
+
+        @Override
+        public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+        }
+
+        @Override
+        public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+            Verdict verdict = lookup(block);
+            if (verdict != null) {
+                verdict.connectedHeight = blockIndex.getHeight();
+            }
+        }
+
+        @Override
+        public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+        }
+    }
+
     // Chainstate class
     public static class Chain implements Iterable<BlockTreeEntry> {
         private final MemorySegment inner;
@@ -294,6 +861,7 @@ public class Chainstate {
         }
 
         public int getHeight() {
+            // The chain functions take cs_main, so they can never be critical downcalls
             return btck_chain_get_height(inner);
         }
 
@@ -314,6 +882,52 @@ public class Chainstate {
             return new ChainIterator(this);
         }
 
+        /**
+         * Splits by height range, so a parallel stream reads disjoint parts
+         * of the chain on each thread. Covers the chain as it was when this
+         * was called.
+         */
+        @Override
+        public Spliterator<BlockTreeEntry> spliterator() {
+            return spliterator(0, getHeight() + 1, false);
+        }
+
+        /**
+         * The active chain from genesis to the current tip.
+         */
+        public Stream<BlockTreeEntry> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        /**
+         * The entries from {@code fromHeight} up to, but not including,
+         * {@code toHeight}.
+         */
+        public Stream<BlockTreeEntry> range(int fromHeight, int toHeight) {
+            if (fromHeight < 0 || toHeight < fromHeight || toHeight > getHeight() + 1) {
+                throw new IllegalArgumentException("Invalid height range: [" + fromHeight + ", " + toHeight + ")");
+            }
+            return StreamSupport.stream(spliterator(fromHeight, toHeight, false), false);
+        }
+
+        /**
+         * The active chain from the current tip down to genesis.
+         */
+        public Stream<BlockTreeEntry> reversed() {
+            return StreamSupport.stream(spliterator(0, getHeight() + 1, true), false);
+        }
+
+        private Spliterator<BlockTreeEntry> spliterator(int fromHeight, int toHeight, boolean descending) {
+            // Not immutable, the chain may change while it is traversed
+            return new IndexSpliterator<>(fromHeight, toHeight, descending, Spliterator.NONNULL, height -> {
+                MemorySegment entry = btck_chain_get_by_height(inner, (int) height);
+                if (entry.address() == 0) {
+                    throw new ConcurrentModificationException("Chain got shorter than height: " + height);
+                }
+                return new BlockTreeEntry(entry);
+            });
+        }
+
         MemorySegment getInner() {
             return inner;
         }
@@ -0,0 +1,239 @@
+package org.bitcoinkernel;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.NotificationsManager.*;
+
+/**
+ * Rate limits block and header tip notifications.
+ *
+ * During initial sync and reindex the kernel reports a new tip for every
+ * block. This adapter only remembers the latest block tip and the latest
+ * header tip, and hands them to the delegate from a scheduler thread at most
+ * once per interval. A tip reported in {@link SynchronizationState#POST_INIT}
+ * is delivered right away together with anything pending, so the end of the
+ * sync is never held back. The other notifications are passed on right away
+ * and leave the pending tips to the scheduler, so they may reach the delegate
+ * before a tip that was reported earlier.
+ *
+ * The delegate is never called concurrently. Block tree entries are only
+ * valid while the chainstate manager is open, close the adapter first.
+ */
+public class CoalescingNotificationAdapter implements KernelNotificationInterfaceCallbacks, AutoCloseable {
+
+    private final KernelNotificationInterfaceCallbacks delegate;
+    private final AtomicReference<BlockTip> pendingBlockTip = new AtomicReference<>();
+    private final AtomicReference<HeaderTip> pendingHeaderTip = new AtomicReference<>();
+    // Serializes calls into the delegate
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * @param interval Minimum time between two deliveries of the same tip type
+     */
+    public CoalescingNotificationAdapter(KernelNotificationInterfaceCallbacks delegate, Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Delivery interval must be positive: " + interval);
+        }
+        this.delegate = delegate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("bitcoinkernel-tip-coalescer").daemon().factory());
+        long nanos = interval.toNanos();
+        scheduler.scheduleAtFixedRate(this::scheduledFlush, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+        received.increment();
+        // The entry passed in is only valid during this call
+        BlockTip tip = new BlockTip(state, blockIndex == null ? null : blockIndex.copy(), verificationProgress);
+        if (pendingBlockTip.getAndSet(tip) != null) {
+            coalesced.increment();
+        }
+        if (state == SynchronizationState.POST_INIT) {
+            flush();
+        }
+    }
+
+    @Override
+    public void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+        received.increment();
+        if (pendingHeaderTip.getAndSet(new HeaderTip(state, height, timestamp, presync)) != null) {
+            coalesced.increment();
+        }
+        if (state == SynchronizationState.POST_INIT) {
+            flush();
+        }
+    }
+
+    @Override
+    public void progress(String title, int progressPercent, boolean resumePossible) {
+        passOn(() -> delegate.progress(title, progressPercent, resumePossible));
+    }
+
+    @Override
+    public void progress(CharSequence title, int progressPercent, boolean resumePossible) {
+        passOn(() -> delegate.progress(title, progressPercent, resumePossible));
+    }
+
+    @Override
+    public void warningSet(Warning warning, String message) {
+        passOn(() -> delegate.warningSet(warning, message));
+    }
+
+    @Override
+    public void warningSet(Warning warning, CharSequence message) {
+        passOn(() -> delegate.warningSet(warning, message));
+    }
+
+    @Override
+    public void warningUnset(Warning warning) {
+        passOn(() -> delegate.warningUnset(warning));
+    }
+
+    @Override
+    public void flushError(String message) {
+        passOn(() -> delegate.flushError(message));
+    }
+
+    @Override
+    public void flushError(CharSequence message) {
+        passOn(() -> delegate.flushError(message));
+    }
+
+    @Override
+    public void fatalError(String message) {
+        passOn(() -> delegate.fatalError(message));
+    }
+
+    @Override
+    public void fatalError(CharSequence message) {
+        passOn(() -> delegate.fatalError(message));
+    }
+
+    /**
+     * Delivers the pending tips now.
+     */
+    public void flush() {
+        deliveryLock.lock();
+        try {
+            deliverPending();
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    /**
+     * Tip notifications received from the kernel.
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Tip notifications replaced by a newer one before they were delivered.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Tip notifications handed to the delegate.
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Stops the scheduler and delivers the pending tips.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        flush();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            // An escaping exception would cancel all later deliveries
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+        }
+    }
+
+    private void passOn(Runnable notification) {
+        deliveryLock.lock();
+        try {
+            notification.run();
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    // Caller holds the delivery lock
+    private void deliverPending() {
+        HeaderTip header = pendingHeaderTip.getAndSet(null);
+        if (header != null) {
+            delivered.increment();
+            delegate.headerTip(header.state, header.height, header.timestamp, header.presync);
+        }
+        BlockTip block = pendingBlockTip.getAndSet(null);
+        if (block != null) {
+            delivered.increment();
+            delegate.blockTip(block.state, block.entry, block.verificationProgress);
+        }
+    }
+
+    private static final class BlockTip {
+        final SynchronizationState state;
+        final BlockTreeEntry entry;
+        final double verificationProgress;
+
+        BlockTip(SynchronizationState state, BlockTreeEntry entry, double verificationProgress) {
+            this.state = state;
+            this.entry = entry;
+            this.verificationProgress = verificationProgress;
+        }
+    }
+
+    private static final class HeaderTip {
+        final SynchronizationState state;
+        final long height;
+        final long timestamp;
+        final boolean presync;
+
+        HeaderTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+            this.state = state;
+            this.height = height;
+            this.timestamp = timestamp;
+            this.presync = presync;
+        }
+    }
+}
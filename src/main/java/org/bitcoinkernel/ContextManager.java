@@ -14,6 +14,8 @@ public class ContextManager {
     // ===== Context Options =====
     public static class ContextOptions implements AutoCloseable {
         private MemorySegment inner;
+        private KernelNotificationManager notificationManager;
+        private ValidationInterfaceManager validationManager;
 
         public ContextOptions() throws KernelTypes.KernelException {
             this.inner = btck_context_options_create.makeInvoker().apply();
@@ -30,17 +32,27 @@ public class ContextManager {
         public void setNotifications(NotificationsManager.KernelNotificationManager notificationManager) {
             checkClosed();
             btck_context_options_set_notifications(inner, notificationManager.getCallbackStruct());
+            this.notificationManager = notificationManager;
         }
 
         public void setValidationInterface(NotificationsManager.ValidationInterfaceManager validationManager) {
             checkClosed();
             btck_context_options_set_validation_interface(inner, validationManager.getCallbackStruct());
+            this.validationManager = validationManager;
         }
 
         MemorySegment getInner() {
             return inner;
         }
 
+        KernelNotificationManager getNotificationManager() {
+            return notificationManager;
+        }
+
+        ValidationInterfaceManager getValidationManager() {
+            return validationManager;
+        }
+
         private void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("ContextOptions object has been closed already");
@@ -59,12 +71,17 @@ public class ContextManager {
     // ===== Context =====
     public static class Context implements AutoCloseable {
         private MemorySegment inner;
+        // The managers the kernel calls into, null if none were set
+        private final KernelNotificationManager notificationManager;
+        private final ValidationInterfaceManager validationManager;
 
         public Context() throws KernelTypes.KernelException {
             this.inner = btck_context_create(MemorySegment.NULL);
             if (inner == MemorySegment.NULL) {
                 throw new KernelTypes.KernelException("Failed to instantiate Context object");
             }
+            this.notificationManager = null;
+            this.validationManager = null;
         }
 
         public Context(ContextOptions options) throws KernelTypes.KernelException {
@@ -72,6 +89,8 @@ public class ContextManager {
             if (inner == MemorySegment.NULL) {
                 throw new KernelTypes.KernelException("Failed to instantiate Context object");
             }
+            this.notificationManager = options.getNotificationManager();
+            this.validationManager = options.getValidationManager();
         }
 
         public boolean interrupt() {
@@ -83,6 +102,14 @@ public class ContextManager {
             return inner;
         }
 
+        KernelNotificationManager getNotificationManager() {
+            return notificationManager;
+        }
+
+        ValidationInterfaceManager getValidationManager() {
+            return validationManager;
+        }
+
         private void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("Context object is already closed");
@@ -0,0 +1,73 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds serialized bytes to the kernel's {@code btck_*_create} functions.
+ *
+ * The kernel deserializes into its own memory, so the input only has to stay
+ * valid for the duration of the call. Native segments, including slices of
+ * mapped files and direct buffers, are passed through as they are. Small heap
+ * segments go through a critical downcall that reads the Java array in place,
+ * for the functions that have one, and the others are copied into scratch
+ * memory first so a long deserialization never holds up the GC.
+ */
+final class Deserializer {
+
+    // Heap inputs up to this size are deserialized in place by a critical downcall
+    static final long CRITICAL_HEAP_LIMIT = 64 * 1024;
+
+    private Deserializer() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * One of the {@code btck_*_create} bindings, e.g. {@code bitcoinkernel_h::btck_block_create}.
+     */
+    @FunctionalInterface
+    interface CreateFunction {
+        MemorySegment apply(MemorySegment data, long length);
+    }
+
+    /**
+     * Creates a kernel object from {@code data}.
+     *
+     * @param create The regular binding, called with native memory
+     * @param createCritical The critical binding that accepts heap segments
+     * @return The new object, or {@code MemorySegment.NULL} if the kernel rejected the data
+     */
+    static MemorySegment create(MemorySegment data, CreateFunction create, CreateFunction createCritical) {
+        if (!data.isNative() && data.byteSize() <= CRITICAL_HEAP_LIMIT) {
+            return createCritical.apply(data, data.byteSize());
+        }
+        return create(data, create);
+    }
+
+    /**
+     * Creates a kernel object from {@code data} without a critical downcall,
+     * for functions that may log and so call back into Java. Heap data is
+     * always copied into scratch memory.
+     *
+     * @param create The regular binding, called with native memory
+     * @return The new object, or {@code MemorySegment.NULL} if the kernel rejected the data
+     */
+    static MemorySegment create(MemorySegment data, CreateFunction create) {
+        if (data.isNative()) {
+            return create.apply(data, data.byteSize());
+        }
+        try (var scratch = ScratchAllocator.push()) {
+            MemorySegment copy = scratch.allocate(data.byteSize());
+            copy.copyFrom(data);
+            return create.apply(copy, copy.byteSize());
+        }
+    }
+
+    /**
+     * The bytes between the position and the limit of {@code buffer}. The
+     * buffer's position is not changed.
+     */
+    static MemorySegment remaining(ByteBuffer buffer) {
+        return MemorySegment.ofBuffer(buffer);
+    }
+}
@@ -0,0 +1,90 @@
+package org.bitcoinkernel;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Spliterator over the indexes {@code [from, to)} of a kernel sequence,
+ * mapped to elements one at a time.
+ *
+ * The range is fixed when the spliterator is created, so the size is exact
+ * and splitting halves the remaining range without touching the kernel. May
+ * run in descending order, the prefix handed out by a split is then the upper
+ * half.
+ */
+final class IndexSpliterator<T> implements Spliterator<T> {
+
+    private final LongFunction<? extends T> element;
+    private final boolean descending;
+    private final int characteristics;
+    // Remaining indexes, from inclusive and to exclusive in either order
+    private long from;
+    private long to;
+
+    /**
+     * @param characteristics Reported on top of {@code ORDERED}, {@code SIZED} and {@code SUBSIZED}
+     */
+    IndexSpliterator(long from, long to, boolean descending, int characteristics, LongFunction<? extends T> element) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid index range: [" + from + ", " + to + ")");
+        }
+        this.element = element;
+        this.descending = descending;
+        this.characteristics = characteristics | ORDERED | SIZED | SUBSIZED;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (from >= to) {
+            return false;
+        }
+        long index = descending ? --to : from++;
+        action.accept(element.apply(index));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        long start = from;
+        long end = to;
+        from = to;
+        if (descending) {
+            for (long index = end - 1; index >= start; index--) {
+                action.accept(element.apply(index));
+            }
+        } else {
+            for (long index = start; index < end; index++) {
+                action.accept(element.apply(index));
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        long mid = (from + to) >>> 1;
+        if (mid <= from) {
+            return null;
+        }
+        if (descending) {
+            Spliterator<T> upper = new IndexSpliterator<>(mid, to, true, characteristics, element);
+            to = mid;
+            return upper;
+        }
+        Spliterator<T> lower = new IndexSpliterator<>(from, mid, false, characteristics, element);
+        from = mid;
+        return lower;
+    }
+
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+}
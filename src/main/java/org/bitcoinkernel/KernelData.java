@@ -1,9 +1,13 @@
 package org.bitcoinkernel;
 
 import java.lang.foreign.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import org.bitcoinkernel.KernelTypes;
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+import org.bitcoinkernel.jextract.bitcoinkernel_h;
 import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
 import static org.bitcoinkernel.Transactions.*;
 
@@ -14,18 +18,37 @@ public class KernelData {
     // ===== ScriptPubkey =====
     public static class ScriptPubkey implements AutoCloseable {
         private MemorySegment inner;
-        private final Arena arena;
         private final boolean ownsMemory;
 
         public ScriptPubkey(byte[] scriptPubkey) throws KernelTypes.KernelException {
-            this.arena = Arena.ofConfined();
-            MemorySegment scriptSegment = arena.allocateFrom(ValueLayout.JAVA_BYTE, scriptPubkey);
-            this.inner = btck_script_pubkey_create(scriptSegment, scriptPubkey.length);
-            if (inner == MemorySegment.NULL) {
-                arena.close();
+            this.inner = create(MemorySegment.ofArray(scriptPubkey));
+            this.ownsMemory = true;
+        }
+
+        /**
+         * Creates a script pubkey from the contents of {@code script}. The
+         * kernel copies the script, so it only has to stay valid for the
+         * duration of this call.
+         */
+        public static ScriptPubkey from(MemorySegment script) throws KernelTypes.KernelException {
+            return new ScriptPubkey(create(script), true);
+        }
+
+        /**
+         * Creates a script pubkey from the remaining bytes of {@code script}.
+         * The buffer's position is not changed.
+         */
+        public static ScriptPubkey from(ByteBuffer script) throws KernelTypes.KernelException {
+            return from(Deserializer.remaining(script));
+        }
+
+        private static MemorySegment create(MemorySegment script) throws KernelTypes.KernelException {
+            MemorySegment scriptPubkey = Deserializer.create(script,
+                bitcoinkernel_h::btck_script_pubkey_create, bitcoinkernel_critical_h::btck_script_pubkey_create);
+            if (scriptPubkey.address() == 0) {
                 throw new KernelTypes.KernelException("Failed to create ScriptPubkey");
             }
-            this.ownsMemory = true;
+            return scriptPubkey;
         }
 
         ScriptPubkey(MemorySegment inner) {
@@ -33,13 +56,11 @@ public class KernelData {
                 throw new IllegalArgumentException("ScriptPubkey cannot be null");
             }
             this.inner = inner;
-            this.arena = null;
             this.ownsMemory = false;
         }
 
         private ScriptPubkey(MemorySegment inner, boolean ownsMemory) {
             this.inner = inner;
-            this.arena = null;
             this.ownsMemory = ownsMemory;
         }
 
@@ -55,14 +76,14 @@ public class KernelData {
                     txTo.countInputs() + " inputs");
             }
 
-            try (var arena = Arena.ofConfined()) {
+            try (var scratch = ScratchAllocator.push()) {
                 // Prepare spent outputs array
                 int numOutputs = (spentOutputs != null) ? spentOutputs.length : 0;
                 MemorySegment outputPtrs;
 
                 if (numOutputs > 0) {
                     // Allocate array of output pointers
-                    outputPtrs = arena.allocate(ValueLayout.ADDRESS, numOutputs);
+                    outputPtrs = scratch.allocate(ValueLayout.ADDRESS, numOutputs);
                     for (int i = 0; i < spentOutputs.length; i++) {
                         outputPtrs.setAtIndex(ValueLayout.ADDRESS, i, spentOutputs[i].getInner());
                     }
@@ -71,7 +92,7 @@ public class KernelData {
                     outputPtrs = MemorySegment.NULL;
                 }
 
-                MemorySegment statusPtr = arena.allocate(ValueLayout.JAVA_BYTE);
+                MemorySegment statusPtr = scratch.allocate(ValueLayout.JAVA_BYTE);
 
                 int result = btck_script_pubkey_verify(
                     inner,
@@ -96,37 +117,42 @@ public class KernelData {
             }
         }
 
-        public byte[] toBytes() {
-            checkClosed();
-
-            try (var arena = Arena.ofConfined()) {
-                // Create a container to collect bytes
-                java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-
-                // Create the writer callback
-                org.bitcoinkernel.jextract.btck_WriteBytes.Function writer = (bytes, size, userData) -> {
-                    try {
-                        byte[] data = bytes.reinterpret(size).toArray(ValueLayout.JAVA_BYTE);
-                        baos.write(data);
-                        return 0; // success
-                    } catch (Exception e) {
-                        return 1; // error
-                    }
-                };
-
-                MemorySegment writerSegment = org.bitcoinkernel.jextract.btck_WriteBytes.allocate(writer, arena);
+        // The kernel asserts on unknown flag bits instead of reporting them
+        static void checkFlags(int flags) {
+            if ((flags & ~KernelTypes.ScriptVerificationFlags.SCRIPT_VERIFY_ALL) != 0) {
+                throw new IllegalArgumentException("Unknown script verification flags: " + flags);
+            }
+        }
 
-                int result = btck_script_pubkey_to_bytes(inner, writerSegment, MemorySegment.NULL);
+        /**
+         * Verifies one input against spent outputs that were already
+         * marshalled into a pointer array, so callers verifying many inputs
+         * of one transaction only build it once.
+         *
+         * @return null if the input is valid, otherwise the reason it is not
+         */
+        static KernelTypes.KernelException.ScriptVerifyError verifyInput(MemorySegment scriptPubkey, long amount,
+                MemorySegment txTo, MemorySegment spentOutputs, long spentOutputsLen, int inputIndex, int flags) {
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment statusPtr = scratch.allocate(ValueLayout.JAVA_BYTE);
+                int result = btck_script_pubkey_verify(
+                    scriptPubkey, amount, txTo, spentOutputs, spentOutputsLen, inputIndex, flags, statusPtr);
                 if (result != 0) {
-                    throw new RuntimeException("Failed to serialize ScriptPubkey");
+                    return null;
                 }
-
-                return baos.toByteArray();
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to serialize ScriptPubkey", e);
+                var error = KernelTypes.KernelException.ScriptVerifyError.fromNative(statusPtr.get(ValueLayout.JAVA_BYTE, 0));
+                // A script that fails to verify leaves the status at OK
+                return error == KernelTypes.KernelException.ScriptVerifyError.OK
+                    ? KernelTypes.KernelException.ScriptVerifyError.INVALID
+                    : error;
             }
         }
 
+        public byte[] toBytes() {
+            checkClosed();
+            return Serializer.toBytes(bitcoinkernel_h::btck_script_pubkey_to_bytes, inner, "ScriptPubkey");
+        }
+
         public ScriptPubkey copy() {
             checkClosed();
             MemorySegment copied = btck_script_pubkey_copy(inner);
@@ -136,7 +162,7 @@ public class KernelData {
             return new ScriptPubkey(copied, true);
         }
 
-        private void checkClosed() {
+        void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("ScriptPubkey has been closed");
             }
@@ -152,9 +178,6 @@ public class KernelData {
                 btck_script_pubkey_destroy(inner);
                 inner = MemorySegment.NULL;
             }
-            if (arena != null) {
-                arena.close();
-            }
         }
     }
 
@@ -173,4 +196,187 @@ public class KernelData {
             return inner;
         }
     }
+
+    // ===== 256-bit Hash Value =====
+    /**
+     * Immutable on-heap copy of a 32 byte kernel hash, held as four longs so
+     * that equality, hashing and ordering never touch native memory or allocate.
+     *
+     * The bytes are kept in the kernel's internal order and compare like
+     * {@code memcmp}, the same as Bitcoin Core's {@code uint256}. The hex form
+     * uses the usual display order, which is the internal order reversed.
+     */
+    public abstract static class Hash256<T extends Hash256<T>> implements Comparable<T> {
+        public static final int SIZE = 32;
+
+        private static final ValueLayout.OfLong WORD = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private final long w0;
+        private final long w1;
+        private final long w2;
+        private final long w3;
+
+        Hash256(MemorySegment bytes) {
+            this.w0 = bytes.get(WORD, 0);
+            this.w1 = bytes.get(WORD, 8);
+            this.w2 = bytes.get(WORD, 16);
+            this.w3 = bytes.get(WORD, 24);
+        }
+
+        Hash256(long w0, long w1, long w2, long w3) {
+            this.w0 = w0;
+            this.w1 = w1;
+            this.w2 = w2;
+            this.w3 = w3;
+        }
+
+        /**
+         * One of the four 8 byte words of the hash, big endian, in internal byte order.
+         */
+        long word(int index) {
+            return switch (index) {
+                case 0 -> w0;
+                case 1 -> w1;
+                case 2 -> w2;
+                case 3 -> w3;
+                default -> throw new IndexOutOfBoundsException("Hash word index out of range: " + index);
+            };
+        }
+
+        static void writeWord(MemorySegment destination, long offset, long word) {
+            destination.set(WORD, offset, word);
+        }
+
+        static long readWord(MemorySegment source, long offset) {
+            return source.get(WORD, offset);
+        }
+
+        /**
+         * Word {@code index} of the hash written as hex in display order,
+         * parsed without allocating.
+         */
+        static long hexWord(CharSequence hex, int index) {
+            long word = 0;
+            for (int i = 0; i < 8; i++) {
+                // Internal byte j is the j-th byte from the end of the display form
+                int pos = 2 * (SIZE - 1 - (index * 8 + i));
+                int high = Character.digit(hex.charAt(pos), 16);
+                int low = Character.digit(hex.charAt(pos + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid hex character in hash: " + hex);
+                }
+                word = (word << 8) | (high << 4) | low;
+            }
+            return word;
+        }
+
+        static MemorySegment checkBytes(byte[] bytes) {
+            if (bytes == null || bytes.length != SIZE) {
+                throw new IllegalArgumentException("Hash length should be 32 bytes");
+            }
+            return MemorySegment.ofArray(bytes);
+        }
+
+        static MemorySegment parseHex(CharSequence hex) {
+            if (hex == null || hex.length() != SIZE * 2) {
+                throw new IllegalArgumentException("Hash hex string should be 64 characters");
+            }
+            byte[] bytes = new byte[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                int high = Character.digit(hex.charAt(2 * i), 16);
+                int low = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid hex character in hash: " + hex);
+                }
+                bytes[SIZE - 1 - i] = (byte) ((high << 4) | low);
+            }
+            return MemorySegment.ofArray(bytes);
+        }
+
+        /**
+         * Hash code of the 32 bytes at the start of {@code bytes}, the same
+         * value {@link #hashCode()} returns for an equal hash.
+         */
+        static int hashCode(MemorySegment bytes) {
+            return hashCode(bytes.get(WORD, 0), bytes.get(WORD, 8), bytes.get(WORD, 16), bytes.get(WORD, 24));
+        }
+
+        private static int hashCode(long w0, long w1, long w2, long w3) {
+            // The words are hash output, so folding them together is enough
+            return Long.hashCode(w0 ^ w1 ^ w2 ^ w3);
+        }
+
+        /**
+         * Writes the hash in internal byte order to the start of {@code destination}.
+         */
+        public void copyTo(MemorySegment destination) {
+            destination.set(WORD, 0, w0);
+            destination.set(WORD, 8, w1);
+            destination.set(WORD, 16, w2);
+            destination.set(WORD, 24, w3);
+        }
+
+        /**
+         * The hash in internal byte order, as returned by the kernel.
+         */
+        public byte[] toBytes() {
+            byte[] bytes = new byte[SIZE];
+            copyTo(MemorySegment.ofArray(bytes));
+            return bytes;
+        }
+
+        /**
+         * The hash as hex in display order, e.g. as shown by block explorers.
+         */
+        public String toHex() {
+            char[] hex = new char[SIZE * 2];
+            long[] words = {w0, w1, w2, w3};
+            for (int i = 0; i < SIZE; i++) {
+                int b = (int) (words[i >>> 3] >>> (56 - 8 * (i & 7))) & 0xff;
+                int pos = 2 * (SIZE - 1 - i);
+                hex[pos] = HEX_DIGITS[b >>> 4];
+                hex[pos + 1] = HEX_DIGITS[b & 0x0f];
+            }
+            return new String(hex);
+        }
+
+        @Override
+        public int compareTo(T other) {
+            Hash256<T> that = other;
+            int result = Long.compareUnsigned(w0, that.w0);
+            if (result == 0) {
+                result = Long.compareUnsigned(w1, that.w1);
+            }
+            if (result == 0) {
+                result = Long.compareUnsigned(w2, that.w2);
+            }
+            if (result == 0) {
+                result = Long.compareUnsigned(w3, that.w3);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || obj.getClass() != getClass()) {
+                return false;
+            }
+            Hash256<?> that = (Hash256<?>) obj;
+            return w0 == that.w0 && w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode(w0, w1, w2, w3);
+        }
+
+        @Override
+        public String toString() {
+            return toHex();
+        }
+    }
 }
@@ -31,13 +31,20 @@ public class KernelTypes {
             return value;
         }
 
-        public static LogCategory fromByte(byte value) {
+        private static final LogCategory[] BY_VALUE = new LogCategory[256];
+
+        static {
             for (LogCategory category : values()) {
-                if (category.value == value) {
-                    return category;
-                }
+                BY_VALUE[category.value & 0xFF] = category;
+            }
+        }
+
+        public static LogCategory fromByte(byte value) {
+            LogCategory category = BY_VALUE[value & 0xFF];
+            if (category == null) {
+                throw new IllegalArgumentException("Invalid LogCategory: " + value);
             }
-            throw new IllegalArgumentException("Invalid LogCategory: " + value);
+            return category;
         }
     }
 
@@ -57,13 +64,20 @@ public class KernelTypes {
             return value;
         }
 
-        public static LogLevel fromByte(byte value) {
+        private static final LogLevel[] BY_VALUE = new LogLevel[256];
+
+        static {
             for (LogLevel level : values()) {
-                if (level.value == value) {
-                    return level;
-                }
+                BY_VALUE[level.value & 0xFF] = level;
+            }
+        }
+
+        public static LogLevel fromByte(byte value) {
+            LogLevel level = BY_VALUE[value & 0xFF];
+            if (level == null) {
+                throw new IllegalArgumentException("Invalid LogLevel: " + value);
             }
-            throw new IllegalArgumentException("Invalid LogLevel: " + value);
+            return level;
         }
     }
 
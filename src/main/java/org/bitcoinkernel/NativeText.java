@@ -0,0 +1,104 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * A UTF-8 message passed to an upcall, read in place from kernel memory.
+ *
+ * Nothing is decoded until a character is asked for. Pure ASCII messages, the
+ * common case, are then read byte by byte, anything else is decoded to a
+ * String once. The view is reused for the next upcall, so it must not be kept
+ * past the callback; {@link #toString()} returns a copy that may be.
+ */
+final class NativeText implements CharSequence {
+
+    // Addresses handed to upcalls are read through one segment covering all memory
+    private static final MemorySegment ALL = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+    private long address;
+    private int length;
+    private boolean valid;
+    // -1 until checked
+    private int ascii;
+    private String decoded;
+
+    NativeText reset(MemorySegment text, long length) {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid message length: " + length);
+        }
+        this.address = text.address();
+        this.length = (int) length;
+        this.valid = true;
+        this.ascii = -1;
+        this.decoded = null;
+        return this;
+    }
+
+    void invalidate() {
+        this.valid = false;
+        this.decoded = null;
+    }
+
+    @Override
+    public int length() {
+        return isAscii() ? length : decoded().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (isAscii()) {
+            Objects.checkIndex(index, length);
+            return (char) ALL.get(ValueLayout.JAVA_BYTE, address + index);
+        }
+        return decoded().charAt(index);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        checkValid();
+        return length == 0;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decoded().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return decoded();
+    }
+
+    private boolean isAscii() {
+        checkValid();
+        if (ascii < 0) {
+            ascii = 1;
+            for (int i = 0; i < length; i++) {
+                if (ALL.get(ValueLayout.JAVA_BYTE, address + i) < 0) {
+                    ascii = 0;
+                    break;
+                }
+            }
+        }
+        return ascii == 1;
+    }
+
+    private String decoded() {
+        checkValid();
+        if (decoded == null) {
+            byte[] bytes = new byte[length];
+            MemorySegment.copy(ALL, ValueLayout.JAVA_BYTE, address, bytes, 0, length);
+            decoded = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return decoded;
+    }
+
+    private void checkValid() {
+        if (!valid) {
+            throw new IllegalStateException("Message is only valid during the callback");
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package org.bitcoinkernel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.bitcoinkernel.NotificationsManager.*;
+
+/**
+ * Moves notifications off the thread the kernel raised them on.
+ *
+ * Upcalls only copy a few primitive fields into a preallocated slot of a
+ * bounded ring, one consumer thread turns the records back into objects and
+ * calls the listener. Slots are claimed and released with per-slot sequence
+ * numbers, so neither side takes a lock. Several kernel threads may publish
+ * at the same time.
+ */
+final class NotificationDispatcher implements AutoCloseable {
+
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = 10_000;
+
+    /**
+     * Receives records on the consumer thread.
+     */
+    interface Handler {
+        void deliver(Event event);
+
+        // Called for records dropped by DROP_OLDEST, to release what they own
+        void discard(Event event);
+    }
+
+    /**
+     * A notification flattened to primitives. What the fields hold depends
+     * on the type, strings and other objects go in {@code text}.
+     */
+    static final class Event {
+        int type;
+        int small0;
+        int small1;
+        long word0;
+        long word1;
+        double real;
+        Object text;
+        // When it was parked, parked records are delivered oldest first
+        long parkedAt;
+
+        void set(int type, int small0, int small1, long word0, long word1, double real, Object text) {
+            this.type = type;
+            this.small0 = small0;
+            this.small1 = small1;
+            this.word0 = word0;
+            this.word1 = word1;
+            this.real = real;
+            this.text = text;
+        }
+
+        void copyFrom(Event other) {
+            set(other.type, other.small0, other.small1, other.word0, other.word1, other.real, other.text);
+        }
+    }
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final OverflowPolicy policy;
+    private final boolean[] coalescable;
+    // Latest overflowing event per coalescable type, delivered once the ring is drained or
+    // moved into it ahead of the next record of another type
+    private final AtomicReferenceArray<Event> coalesced;
+    private final AtomicLong parkedCount = new AtomicLong();
+    private final Handler handler;
+
+    private final Thread consumer;
+    private volatile boolean waiting;
+    // Lowest ring position the consumer may still be delivering, MAX_VALUE when it has none
+    private volatile long inFlight = Long.MAX_VALUE;
+    private volatile boolean closed;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two
+     * @param coalescableTypes Event types COALESCE may merge, the others block when the ring is full
+     */
+    NotificationDispatcher(String name, int capacity, OverflowPolicy policy, int[] coalescableTypes, int typeCount,
+                           Handler handler) {
+        if (capacity < 1 || capacity > (1 << 24)) {
+            throw new IllegalArgumentException("Queue capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Event[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.policy = policy;
+        this.coalescable = new boolean[typeCount];
+        for (int type : coalescableTypes) {
+            coalescable[type] = true;
+        }
+        this.coalesced = new AtomicReferenceArray<>(typeCount);
+        this.handler = handler;
+        this.consumer = Thread.ofPlatform().name(name).daemon().unstarted(this::consume);
+        this.consumer.start();
+    }
+
+    /**
+     * Called on the upcall thread. Only allocates when the ring is full and
+     * the policy has to drop or merge.
+     */
+    void publish(int type, int small0, int small1, long word0, long word1, double real, Object text) {
+        int spins = 0;
+        Event victim = null;
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    Event earlier = policy == OverflowPolicy.COALESCE ? takeParked(type) : null;
+                    if (earlier != null) {
+                        // Raised before this record, so it takes the slot first
+                        slots[index].copyFrom(earlier);
+                        sequences.set(index, position + 1);
+                        wakeConsumer();
+                        continue;
+                    }
+                    slots[index].set(type, small0, small1, word0, word1, real, text);
+                    sequences.set(index, position + 1);
+                    if (coalescable[type] && coalesced.get(type) != null) {
+                        // Parked records are delivered after the ring, this one is newer
+                        Event parked = coalesced.getAndSet(type, null);
+                        if (parked != null) {
+                            coalescedCount.increment();
+                            handler.discard(parked);
+                        }
+                    }
+                    wakeConsumer();
+                    return;
+                }
+            } else if (diff < 0) {
+                // Full
+                if (policy == OverflowPolicy.COALESCE && coalescable[type]) {
+                    Event event = new Event();
+                    event.set(type, small0, small1, word0, word1, real, text);
+                    event.parkedAt = parkedCount.getAndIncrement();
+                    Event replaced = coalesced.getAndSet(type, event);
+                    if (replaced != null) {
+                        coalescedCount.increment();
+                        handler.discard(replaced);
+                    }
+                    wakeConsumer();
+                    return;
+                }
+                if (policy == OverflowPolicy.DROP_OLDEST) {
+                    if (victim == null) {
+                        victim = new Event();
+                    }
+                    if (poll(victim) >= 0) {
+                        dropped.increment();
+                        handler.discard(victim);
+                    }
+                    continue;
+                }
+                wakeConsumer();
+                if (++spins < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            // Otherwise another producer claimed the slot first, try the next one
+        }
+    }
+
+    /**
+     * Waits until everything published before the call has been delivered.
+     */
+    void awaitDelivery() {
+        if (Thread.currentThread() == consumer) {
+            throw new IllegalStateException("Cannot wait for delivery from a notification callback");
+        }
+        long target = tail.get();
+        while (head.get() < target || inFlight < target || hasCoalesced()) {
+            if (!consumer.isAlive()) {
+                return;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    long getCoalesced() {
+        return coalescedCount.sum();
+    }
+
+    // Takes the oldest record, from the consumer or from a producer dropping it.
+    // Returns its ring position, or -1 if there is none.
+    private long poll(Event into) {
+        while (true) {
+            long position = head.get();
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Event slot = slots[index];
+                    into.copyFrom(slot);
+                    slot.text = null;
+                    sequences.set(index, position + mask + 1);
+                    return position;
+                }
+            } else if (diff < 0) {
+                return -1;
+            }
+        }
+    }
+
+    private boolean isIdle() {
+        long position = head.get();
+        return sequences.get((int) (position & mask)) != position + 1 && !hasCoalesced();
+    }
+
+    private boolean hasCoalesced() {
+        for (int type = 0; type < coalescable.length; type++) {
+            if (coalescable[type] && coalesced.get(type) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Removes the oldest parked record of another type than except, or returns null
+    private Event takeParked(int except) {
+        int oldest = -1;
+        long oldestParkedAt = Long.MAX_VALUE;
+        for (int type = 0; type < coalescable.length; type++) {
+            if (!coalescable[type] || type == except) {
+                continue;
+            }
+            Event parked = coalesced.get(type);
+            if (parked != null && parked.parkedAt < oldestParkedAt) {
+                oldest = type;
+                oldestParkedAt = parked.parkedAt;
+            }
+        }
+        return oldest < 0 ? null : coalesced.getAndSet(oldest, null);
+    }
+
+    private void wakeConsumer() {
+        if (waiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void consume() {
+        Event event = new Event();
+        while (true) {
+            // Published before taking a record, so awaitDelivery never misses one in flight
+            inFlight = head.get();
+            long position = poll(event);
+            if (position >= 0) {
+                inFlight = position;
+                deliver(event);
+                continue;
+            }
+            inFlight = Long.MIN_VALUE;
+            Event parked = takeParked(-1);
+            if (parked != null) {
+                deliver(parked);
+                continue;
+            }
+            inFlight = Long.MAX_VALUE;
+            if (closed) {
+                return;
+            }
+            waiting = true;
+            if (isIdle() && !closed) {
+                LockSupport.park(this);
+            }
+            waiting = false;
+        }
+    }
+
+    private void deliver(Event event) {
+        try {
+            handler.deliver(event);
+        } catch (Throwable t) {
+            // A failing listener must not stop delivery to it
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+        }
+        event.text = null;
+    }
+
+    /**
+     * Delivers what is queued and stops the consumer thread. The kernel must
+     * not publish anymore.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
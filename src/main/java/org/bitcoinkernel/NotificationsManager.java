@@ -4,12 +4,22 @@ import org.bitcoinkernel.KernelTypes;
 import org.bitcoinkernel.KernelData;
 
 import java.lang.foreign.*;
-import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bitcoinkernel.jextract.btck_NotificationInterfaceCallbacks;
 import org.bitcoinkernel.jextract.btck_ValidationInterfaceCallbacks;
 import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
 import static org.bitcoinkernel.Blocks.*;
+import static org.bitcoinkernel.Blocks.BlockValidationState.*;
 import static org.bitcoinkernel.Chainstate.*;
 
 public class NotificationsManager {
@@ -23,9 +33,36 @@ public class NotificationsManager {
         void warningUnset(Warning warning);
         void flushError(String message);
         void fatalError(String message);
+
+        /*
+         * Called by the manager in place of the String variants above. The
+         * message is read from kernel memory only when used and is valid for
+         * the duration of the call. Override these to skip decoding it.
+         */
+
+        default void progress(CharSequence title, int progressPercent, boolean resumePossible) {
+            progress(title.toString(), progressPercent, resumePossible);
+        }
+
+        default void warningSet(Warning warning, CharSequence message) {
+            warningSet(warning, message.toString());
+        }
+
+        default void flushError(CharSequence message) {
+            flushError(message.toString());
+        }
+
+        default void fatalError(CharSequence message) {
+            fatalError(message.toString());
+        }
     }
 
     // ===== Validation Interface Callbacks =====
+    /**
+     * Blocks, entries and states passed to these callbacks are views that are
+     * only valid during the call, see {@link Block#copy()} and
+     * {@link BlockTreeEntry#copy()} to keep them.
+     */
     public interface ValidationInterfaceCallbacks {
         void blockChecked(Block block, BlockValidationState state);
         void powValidBlock(Block block, BlockTreeEntry blockIndex);
@@ -33,14 +70,108 @@ public class NotificationsManager {
         void blockDisconnected(Block block, BlockTreeEntry blockIndex);
     }
 
+    // ===== Registrable Events =====
+    public enum KernelNotification {
+        BLOCK_TIP,
+        HEADER_TIP,
+        PROGRESS,
+        WARNING_SET,
+        WARNING_UNSET,
+        FLUSH_ERROR,
+        FATAL_ERROR
+    }
+
+    public enum ValidationEvent {
+        BLOCK_CHECKED,
+        POW_VALID_BLOCK,
+        BLOCK_CONNECTED,
+        BLOCK_DISCONNECTED
+    }
+
+    // ===== Overflow Policy =====
+    /**
+     * What a manager with queued dispatch does when its queue is full.
+     */
+    public enum OverflowPolicy {
+        /** The kernel thread waits until the dispatcher made room. */
+        BLOCK,
+        /** The oldest queued notification is dropped. */
+        DROP_OLDEST,
+        /**
+         * Tip and progress notifications replace the pending one of the same
+         * kind, only the latest is delivered. Other notifications wait as
+         * with {@link #BLOCK}. What is delivered keeps the order the kernel
+         * raised it in.
+         */
+        COALESCE
+    }
+
     // ===== Kernel Notification Manager =====
     public static class KernelNotificationManager implements AutoCloseable {
+        // Record types for queued dispatch
+        private static final int BLOCK_TIP = 0;
+        private static final int HEADER_TIP = 1;
+        private static final int PROGRESS = 2;
+        private static final int WARNING_SET = 3;
+        private static final int WARNING_UNSET = 4;
+        private static final int FLUSH_ERROR = 5;
+        private static final int FATAL_ERROR = 6;
+        private static final int TYPES = 7;
+
         private final MemorySegment callbackStruct;
         private final Arena arena;
         private final KernelNotificationInterfaceCallbacks callbacks;
+        // Notified after the callbacks, used by the library itself, e.g. for import progress
+        private final List<KernelNotificationInterfaceCallbacks> listeners = new CopyOnWriteArrayList<>();
+        private final EnumSet<KernelNotification> events;
+        // Null if the callbacks are called on the kernel's thread
+        private final NotificationDispatcher dispatcher;
 
+        /**
+         * Calls {@code callbacks} on the kernel thread that raised the
+         * notification, which waits for them to return.
+         */
         public KernelNotificationManager(KernelNotificationInterfaceCallbacks callbacks) {
+            this(callbacks, EnumSet.allOf(KernelNotification.class));
+        }
+
+        /**
+         * Only registers upcalls for {@code events}. The kernel skips the
+         * others entirely, and the matching methods of {@code callbacks} are
+         * never called.
+         */
+        public KernelNotificationManager(KernelNotificationInterfaceCallbacks callbacks,
+                                         Set<KernelNotification> events) {
+            this(callbacks, events, null);
+        }
+
+        /**
+         * Queues notifications and calls {@code callbacks} on a dispatcher
+         * thread, in the order the notifications were raised. The kernel only
+         * waits for a slot in the queue.
+         *
+         * @param queueCapacity Number of queued notifications, rounded up to a power of two
+         * @param policy What to do when the queue is full
+         */
+        public KernelNotificationManager(KernelNotificationInterfaceCallbacks callbacks, int queueCapacity,
+                                         OverflowPolicy policy) {
+            this(callbacks, EnumSet.allOf(KernelNotification.class), queueCapacity, policy);
+        }
+
+        /**
+         * Queued dispatch of only {@code events}.
+         */
+        public KernelNotificationManager(KernelNotificationInterfaceCallbacks callbacks,
+                                         Set<KernelNotification> events, int queueCapacity, OverflowPolicy policy) {
+            this(callbacks, events, new NotificationDispatcher("bitcoinkernel-notifications", queueCapacity, policy,
+                new int[] {BLOCK_TIP, HEADER_TIP, PROGRESS}, TYPES, new Delivery(callbacks)));
+        }
+
+        private KernelNotificationManager(KernelNotificationInterfaceCallbacks callbacks,
+                                          Set<KernelNotification> events, NotificationDispatcher dispatcher) {
             this.callbacks = callbacks;
+            this.events = events.isEmpty() ? EnumSet.noneOf(KernelNotification.class) : EnumSet.copyOf(events);
+            this.dispatcher = dispatcher;
             this.arena = Arena.ofShared();
             this.callbackStruct = btck_NotificationInterfaceCallbacks.allocate(arena);
 
@@ -49,91 +180,358 @@ public class NotificationsManager {
             btck_NotificationInterfaceCallbacks.user_data_destroy(callbackStruct, MemorySegment.NULL);
 
             // Set up block_tip callback
-            var blockTipStub = org.bitcoinkernel.jextract.btck_NotifyBlockTip.allocate(
-                (userData, state, entry, verificationProgress) -> {
-                    SynchronizationState syncState = SynchronizationState.fromByte(state);
-                    BlockTreeEntry blockEntry = entry != MemorySegment.NULL ? new BlockTreeEntry(entry) : null;
-                    callbacks.blockTip(syncState, blockEntry, verificationProgress);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.block_tip(callbackStruct, blockTipStub);
+            if (events.contains(KernelNotification.BLOCK_TIP)) {
+                var blockTipStub = org.bitcoinkernel.jextract.btck_NotifyBlockTip.allocate(
+                    (userData, state, entry, verificationProgress) -> {
+                        if (dispatcher != null) {
+                            dispatcher.publish(BLOCK_TIP, state, 0, entry.address(), 0, verificationProgress, null);
+                            if (listeners.isEmpty()) {
+                                return;
+                            }
+                        }
+                        SynchronizationState syncState = SynchronizationState.fromByte(state);
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            BlockTreeEntry blockEntry = entry.address() != 0 ? views.entry.reset(entry) : null;
+                            if (dispatcher == null) {
+                                callbacks.blockTip(syncState, blockEntry, verificationProgress);
+                            }
+                            for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                                listener.blockTip(syncState, blockEntry, verificationProgress);
+                            }
+                        } finally {
+                            views.release();
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.block_tip(callbackStruct, blockTipStub);
+            }
 
             // Set up header_tip callback
-            var headerTipStub = org.bitcoinkernel.jextract.btck_NotifyHeaderTip.allocate(
-                (userData, state, height, timestamp, presync) -> {
-                    SynchronizationState syncState = SynchronizationState.fromByte(state);
-                    callbacks.headerTip(syncState, height, timestamp, presync != 0);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.header_tip(callbackStruct, headerTipStub);
+            if (events.contains(KernelNotification.HEADER_TIP)) {
+                var headerTipStub = org.bitcoinkernel.jextract.btck_NotifyHeaderTip.allocate(
+                    (userData, state, height, timestamp, presync) -> {
+                        if (dispatcher != null) {
+                            dispatcher.publish(HEADER_TIP, state, presync, height, timestamp, 0, null);
+                            if (listeners.isEmpty()) {
+                                return;
+                            }
+                        }
+                        SynchronizationState syncState = SynchronizationState.fromByte(state);
+                        if (dispatcher == null) {
+                            callbacks.headerTip(syncState, height, timestamp, presync != 0);
+                        }
+                        for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                            listener.headerTip(syncState, height, timestamp, presync != 0);
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.header_tip(callbackStruct, headerTipStub);
+            }
 
             // Set up progress callback
-            var progressStub = org.bitcoinkernel.jextract.btck_NotifyProgress.allocate(
-                (userData, title, titleLen, progressPercent, resumePossible) -> {
-                    String titleStr = title.reinterpret(titleLen).getString(0, StandardCharsets.UTF_8);
-                    callbacks.progress(titleStr, progressPercent, resumePossible != 0);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.progress(callbackStruct, progressStub);
+            if (events.contains(KernelNotification.PROGRESS)) {
+                var progressStub = org.bitcoinkernel.jextract.btck_NotifyProgress.allocate(
+                    (userData, title, titleLen, progressPercent, resumePossible) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            NativeText text = views.text.reset(title, titleLen);
+                            if (dispatcher != null) {
+                                dispatcher.publish(PROGRESS, progressPercent, resumePossible, 0, 0, 0, text.toString());
+                            } else {
+                                callbacks.progress(text, progressPercent, resumePossible != 0);
+                            }
+                            for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                                listener.progress(text, progressPercent, resumePossible != 0);
+                            }
+                        } finally {
+                            views.release();
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.progress(callbackStruct, progressStub);
+            }
 
             // Set up warning_set callback
-            var warningSetStub = org.bitcoinkernel.jextract.btck_NotifyWarningSet.allocate(
-                (userData, warning, message, messageLen) -> {
-                    Warning warn = Warning.fromByte(warning);
-                    String messageStr = message.reinterpret(messageLen).getString(0, StandardCharsets.UTF_8);
-                    callbacks.warningSet(warn, messageStr);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.warning_set(callbackStruct, warningSetStub);
+            if (events.contains(KernelNotification.WARNING_SET)) {
+                var warningSetStub = org.bitcoinkernel.jextract.btck_NotifyWarningSet.allocate(
+                    (userData, warning, message, messageLen) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            NativeText text = views.text.reset(message, messageLen);
+                            if (dispatcher != null) {
+                                dispatcher.publish(WARNING_SET, warning, 0, 0, 0, 0, text.toString());
+                                if (listeners.isEmpty()) {
+                                    return;
+                                }
+                            }
+                            Warning warn = Warning.fromByte(warning);
+                            if (dispatcher == null) {
+                                callbacks.warningSet(warn, text);
+                            }
+                            for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                                listener.warningSet(warn, text);
+                            }
+                        } finally {
+                            views.release();
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.warning_set(callbackStruct, warningSetStub);
+            }
 
             // Set up warning_unset callback
-            var warningUnsetStub = org.bitcoinkernel.jextract.btck_NotifyWarningUnset.allocate(
-                (userData, warning) -> {
-                    Warning warn = Warning.fromByte(warning);
-                    callbacks.warningUnset(warn);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.warning_unset(callbackStruct, warningUnsetStub);
+            if (events.contains(KernelNotification.WARNING_UNSET)) {
+                var warningUnsetStub = org.bitcoinkernel.jextract.btck_NotifyWarningUnset.allocate(
+                    (userData, warning) -> {
+                        if (dispatcher != null) {
+                            dispatcher.publish(WARNING_UNSET, warning, 0, 0, 0, 0, null);
+                            if (listeners.isEmpty()) {
+                                return;
+                            }
+                        }
+                        Warning warn = Warning.fromByte(warning);
+                        if (dispatcher == null) {
+                            callbacks.warningUnset(warn);
+                        }
+                        for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                            listener.warningUnset(warn);
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.warning_unset(callbackStruct, warningUnsetStub);
+            }
 
             // Set up flush_error callback
-            var flushErrorStub = org.bitcoinkernel.jextract.btck_NotifyFlushError.allocate(
-                (userData, message, messageLen) -> {
-                    String messageStr = message.reinterpret(messageLen).getString(0, StandardCharsets.UTF_8);
-                    callbacks.flushError(messageStr);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.flush_error(callbackStruct, flushErrorStub);
+            if (events.contains(KernelNotification.FLUSH_ERROR)) {
+                var flushErrorStub = org.bitcoinkernel.jextract.btck_NotifyFlushError.allocate(
+                    (userData, message, messageLen) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            NativeText text = views.text.reset(message, messageLen);
+                            if (dispatcher != null) {
+                                dispatcher.publish(FLUSH_ERROR, 0, 0, 0, 0, 0, text.toString());
+                            } else {
+                                callbacks.flushError(text);
+                            }
+                            for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                                listener.flushError(text);
+                            }
+                        } finally {
+                            views.release();
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.flush_error(callbackStruct, flushErrorStub);
+            }
 
             // Set up fatal_error callback
-            var fatalErrorStub = org.bitcoinkernel.jextract.btck_NotifyFatalError.allocate(
-                (userData, message, messageLen) -> {
-                    String messageStr = message.reinterpret(messageLen).getString(0, StandardCharsets.UTF_8);
-                    callbacks.fatalError(messageStr);
-                }, arena
-            );
-            btck_NotificationInterfaceCallbacks.fatal_error(callbackStruct, fatalErrorStub);
+            if (events.contains(KernelNotification.FATAL_ERROR)) {
+                var fatalErrorStub = org.bitcoinkernel.jextract.btck_NotifyFatalError.allocate(
+                    (userData, message, messageLen) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            NativeText text = views.text.reset(message, messageLen);
+                            if (dispatcher != null) {
+                                dispatcher.publish(FATAL_ERROR, 0, 0, 0, 0, 0, text.toString());
+                            } else {
+                                callbacks.fatalError(text);
+                            }
+                            for (KernelNotificationInterfaceCallbacks listener : listeners) {
+                                listener.fatalError(text);
+                            }
+                        } finally {
+                            views.release();
+                        }
+                    }, arena
+                );
+                btck_NotificationInterfaceCallbacks.fatal_error(callbackStruct, fatalErrorStub);
+            }
         }
 
         public MemorySegment getCallbackStruct() {
             return callbackStruct;
         }
 
+        void addListener(KernelNotificationInterfaceCallbacks listener) {
+            listeners.add(listener);
+        }
+
+        void removeListener(KernelNotificationInterfaceCallbacks listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * Adds {@code subscriber} next to the callbacks given at construction.
+         * It is called on the thread that raised the notification, after the
+         * callbacks, and should return quickly.
+         */
+        public Subscription subscribe(KernelNotificationInterfaceCallbacks subscriber) {
+            return subscribe(subscriber, null);
+        }
+
+        /**
+         * Adds {@code subscriber}, called on {@code executor}. It sees the
+         * notifications one at a time and in the order they were raised, however
+         * many threads the executor has. Only registered events are delivered.
+         */
+        public Subscription subscribe(KernelNotificationInterfaceCallbacks subscriber, Executor executor) {
+            KernelSubscriber adapter = new KernelSubscriber(subscriber, executor == null ? null : new SerialExecutor(executor));
+            listeners.add(adapter);
+            return new Subscription(adapter, () -> listeners.remove(adapter));
+        }
+
+        /**
+         * Whether an upcall is registered for {@code event}.
+         */
+        public boolean isRegistered(KernelNotification event) {
+            return events.contains(event);
+        }
+
+        /**
+         * Waits until the queued notifications have been delivered. Block tree
+         * entries point into a chainstate manager, drain the queue before the
+         * manager is closed. Returns right away without queued dispatch.
+         */
+        public void awaitDelivery() {
+            if (dispatcher != null) {
+                dispatcher.awaitDelivery();
+            }
+        }
+
+        /**
+         * Notifications dropped by {@link OverflowPolicy#DROP_OLDEST}.
+         */
+        public long getDroppedNotifications() {
+            return dispatcher == null ? 0 : dispatcher.getDropped();
+        }
+
+        /**
+         * Notifications replaced by a newer one under {@link OverflowPolicy#COALESCE}.
+         */
+        public long getCoalescedNotifications() {
+            return dispatcher == null ? 0 : dispatcher.getCoalesced();
+        }
+
+        /**
+         * Delivers the queued notifications, if any, and releases the upcall
+         * stubs. The context using this manager has to be closed first.
+         */
         @Override
         public void close() {
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
             if (arena != null) {
                 arena.close();
             }
         }
+
+        // Turns queued records back into callback invocations
+        private static final class Delivery implements NotificationDispatcher.Handler {
+            private final KernelNotificationInterfaceCallbacks callbacks;
+            // Only used on the consumer thread
+            private final BlockTreeEntry entry = BlockTreeEntry.view();
+
+            Delivery(KernelNotificationInterfaceCallbacks callbacks) {
+                this.callbacks = callbacks;
+            }
+
+            @Override
+            public void deliver(NotificationDispatcher.Event event) {
+                try {
+                    dispatch(event);
+                } finally {
+                    entry.reset(MemorySegment.NULL);
+                }
+            }
+
+            private void dispatch(NotificationDispatcher.Event event) {
+                switch (event.type) {
+                    case BLOCK_TIP -> callbacks.blockTip(SynchronizationState.fromByte((byte) event.small0),
+                        event.word0 != 0 ? entry.reset(MemorySegment.ofAddress(event.word0)) : null, event.real);
+                    case HEADER_TIP -> callbacks.headerTip(SynchronizationState.fromByte((byte) event.small0),
+                        event.word0, event.word1, event.small1 != 0);
+                    case PROGRESS -> callbacks.progress((String) event.text, event.small0, event.small1 != 0);
+                    case WARNING_SET -> callbacks.warningSet(Warning.fromByte((byte) event.small0), (String) event.text);
+                    case WARNING_UNSET -> callbacks.warningUnset(Warning.fromByte((byte) event.small0));
+                    case FLUSH_ERROR -> callbacks.flushError((String) event.text);
+                    case FATAL_ERROR -> callbacks.fatalError((String) event.text);
+                    default -> throw new IllegalStateException("Unknown notification type: " + event.type);
+                }
+            }
+
+            @Override
+            public void discard(NotificationDispatcher.Event event) {
+                // Nothing native is held by kernel notifications
+            }
+        }
     }
 
     // ===== Validation Interface Manager =====
     public static class ValidationInterfaceManager implements AutoCloseable {
+        // Record types for queued dispatch
+        private static final int BLOCK_CHECKED = 0;
+        private static final int POW_VALID_BLOCK = 1;
+        private static final int BLOCK_CONNECTED = 2;
+        private static final int BLOCK_DISCONNECTED = 3;
+        private static final int TYPES = 4;
+
         private final MemorySegment callbackStruct;
         private final Arena arena;
         private final ValidationInterfaceCallbacks callbacks;
+        // Notified after the callbacks, used by the library itself, e.g. to correlate block results
+        private final List<ValidationInterfaceCallbacks> listeners = new CopyOnWriteArrayList<>();
+        private final EnumSet<ValidationEvent> events;
+        // Null if the callbacks are called on the kernel's thread
+        private final NotificationDispatcher dispatcher;
 
+        /**
+         * Calls {@code callbacks} on the validation thread, which waits for
+         * them to return.
+         */
         public ValidationInterfaceManager(ValidationInterfaceCallbacks callbacks) {
+            this(callbacks, EnumSet.allOf(ValidationEvent.class));
+        }
+
+        /**
+         * Only registers upcalls for {@code events}. The kernel neither copies
+         * blocks for nor calls into the others, and the matching methods of
+         * {@code callbacks} are never called.
+         */
+        public ValidationInterfaceManager(ValidationInterfaceCallbacks callbacks, Set<ValidationEvent> events) {
+            this(callbacks, events, null);
+        }
+
+        /**
+         * Queues validation events and calls {@code callbacks} on a
+         * dispatcher thread, in the order the events were raised. The
+         * validation state passed to {@code blockChecked} is a copy.
+         * Validation events are never merged, so {@link OverflowPolicy#COALESCE}
+         * waits like {@link OverflowPolicy#BLOCK}.
+         *
+         * @param queueCapacity Number of queued events, rounded up to a power of two
+         * @param policy What to do when the queue is full
+         */
+        public ValidationInterfaceManager(ValidationInterfaceCallbacks callbacks, int queueCapacity,
+                                          OverflowPolicy policy) {
+            this(callbacks, EnumSet.allOf(ValidationEvent.class), queueCapacity, policy);
+        }
+
+        /**
+         * Queued dispatch of only {@code events}.
+         */
+        public ValidationInterfaceManager(ValidationInterfaceCallbacks callbacks, Set<ValidationEvent> events,
+                                          int queueCapacity, OverflowPolicy policy) {
+            this(callbacks, events, new NotificationDispatcher("bitcoinkernel-validation", queueCapacity, policy,
+                new int[0], TYPES, new Delivery(callbacks)));
+        }
+
+        private ValidationInterfaceManager(ValidationInterfaceCallbacks callbacks, Set<ValidationEvent> events,
+                                           NotificationDispatcher dispatcher) {
             this.callbacks = callbacks;
+            this.events = events.isEmpty() ? EnumSet.noneOf(ValidationEvent.class) : EnumSet.copyOf(events);
+            this.dispatcher = dispatcher;
             this.arena = Arena.ofShared();
             this.callbackStruct = btck_ValidationInterfaceCallbacks.allocate(arena);
 
@@ -142,55 +540,535 @@ public class NotificationsManager {
             btck_ValidationInterfaceCallbacks.user_data_destroy(callbackStruct, MemorySegment.NULL);
 
             // Set up block_checked callback
-            var blockCheckedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockChecked.allocate(
-                (userData, block, state) -> {
-                    Block blk = new Block(block);
-                    BlockValidationState validationState = new BlockValidationState(state);
-                    callbacks.blockChecked(blk, validationState);
-                }, arena
-            );
-            btck_ValidationInterfaceCallbacks.block_checked(callbackStruct, blockCheckedStub);
+            if (events.contains(ValidationEvent.BLOCK_CHECKED)) {
+                var blockCheckedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockChecked.allocate(
+                    (userData, block, state) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            Block blk = views.block.reset(block);
+                            BlockValidationState validationState = views.state.reset(state);
+                            if (dispatcher == null) {
+                                callbacks.blockChecked(blk, validationState);
+                            }
+                            for (ValidationInterfaceCallbacks listener : listeners) {
+                                listener.blockChecked(blk, validationState);
+                            }
+                            // The dispatcher takes over the block reference, hand it over last
+                            if (dispatcher != null) {
+                                dispatcher.publish(BLOCK_CHECKED, validationState.getValidationMode().getValue(),
+                                    validationState.getBlockValidationResult().getValue(), block.address(), 0, 0, null);
+                            }
+                        } finally {
+                            views.release();
+                            if (dispatcher == null) {
+                                btck_block_destroy(block);
+                            }
+                        }
+                    }, arena
+                );
+                btck_ValidationInterfaceCallbacks.block_checked(callbackStruct, blockCheckedStub);
+            }
 
             // Set up pow_valid_block callback
-            var powValidBlockStub = org.bitcoinkernel.jextract.btck_ValidationInterfacePoWValidBlock.allocate(
-                (userData, block, blockIndex) -> {
-                    Block blk = new Block(block);
-                    BlockTreeEntry entry = new BlockTreeEntry(blockIndex);
-                    callbacks.powValidBlock(blk, entry);
-                }, arena
-            );
-            btck_ValidationInterfaceCallbacks.pow_valid_block(callbackStruct, powValidBlockStub);
+            if (events.contains(ValidationEvent.POW_VALID_BLOCK)) {
+                var powValidBlockStub = org.bitcoinkernel.jextract.btck_ValidationInterfacePoWValidBlock.allocate(
+                    (userData, block, blockIndex) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            Block blk = views.block.reset(block);
+                            BlockTreeEntry entry = views.entry.reset(blockIndex);
+                            if (dispatcher == null) {
+                                callbacks.powValidBlock(blk, entry);
+                            }
+                            for (ValidationInterfaceCallbacks listener : listeners) {
+                                listener.powValidBlock(blk, entry);
+                            }
+                            if (dispatcher != null) {
+                                dispatcher.publish(POW_VALID_BLOCK, 0, 0, block.address(), blockIndex.address(), 0, null);
+                            }
+                        } finally {
+                            views.release();
+                            if (dispatcher == null) {
+                                btck_block_destroy(block);
+                            }
+                        }
+                    }, arena
+                );
+                btck_ValidationInterfaceCallbacks.pow_valid_block(callbackStruct, powValidBlockStub);
+            }
 
             // Set up block_connected callback
-            var blockConnectedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockConnected.allocate(
-                (userData, block, blockIndex) -> {
-                    Block blk = new Block(block);
-                    BlockTreeEntry entry = new BlockTreeEntry(blockIndex);
-                    callbacks.blockConnected(blk, entry);
-                }, arena
-            );
-            btck_ValidationInterfaceCallbacks.block_connected(callbackStruct, blockConnectedStub);
+            if (events.contains(ValidationEvent.BLOCK_CONNECTED)) {
+                var blockConnectedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockConnected.allocate(
+                    (userData, block, blockIndex) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            Block blk = views.block.reset(block);
+                            BlockTreeEntry entry = views.entry.reset(blockIndex);
+                            if (dispatcher == null) {
+                                callbacks.blockConnected(blk, entry);
+                            }
+                            for (ValidationInterfaceCallbacks listener : listeners) {
+                                listener.blockConnected(blk, entry);
+                            }
+                            if (dispatcher != null) {
+                                dispatcher.publish(BLOCK_CONNECTED, 0, 0, block.address(), blockIndex.address(), 0, null);
+                            }
+                        } finally {
+                            views.release();
+                            if (dispatcher == null) {
+                                btck_block_destroy(block);
+                            }
+                        }
+                    }, arena
+                );
+                btck_ValidationInterfaceCallbacks.block_connected(callbackStruct, blockConnectedStub);
+            }
 
             // Set up block_disconnected callback
-            var blockDisconnectedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockDisconnected.allocate(
-                (userData, block, blockIndex) -> {
-                    Block blk = new Block(block);
-                    BlockTreeEntry entry = new BlockTreeEntry(blockIndex);
-                    callbacks.blockDisconnected(blk, entry);
-                }, arena
-            );
-            btck_ValidationInterfaceCallbacks.block_disconnected(callbackStruct, blockDisconnectedStub);
+            if (events.contains(ValidationEvent.BLOCK_DISCONNECTED)) {
+                var blockDisconnectedStub = org.bitcoinkernel.jextract.btck_ValidationInterfaceBlockDisconnected.allocate(
+                    (userData, block, blockIndex) -> {
+                        UpcallViews views = UpcallViews.acquire();
+                        try {
+                            Block blk = views.block.reset(block);
+                            BlockTreeEntry entry = views.entry.reset(blockIndex);
+                            if (dispatcher == null) {
+                                callbacks.blockDisconnected(blk, entry);
+                            }
+                            for (ValidationInterfaceCallbacks listener : listeners) {
+                                listener.blockDisconnected(blk, entry);
+                            }
+                            if (dispatcher != null) {
+                                dispatcher.publish(BLOCK_DISCONNECTED, 0, 0, block.address(), blockIndex.address(), 0, null);
+                            }
+                        } finally {
+                            views.release();
+                            if (dispatcher == null) {
+                                btck_block_destroy(block);
+                            }
+                        }
+                    }, arena
+                );
+                btck_ValidationInterfaceCallbacks.block_disconnected(callbackStruct, blockDisconnectedStub);
+            }
         }
 
         public MemorySegment getCallbackStruct() {
             return callbackStruct;
         }
 
+        void addListener(ValidationInterfaceCallbacks listener) {
+            listeners.add(listener);
+        }
+
+        void removeListener(ValidationInterfaceCallbacks listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * Adds {@code subscriber} next to the callbacks given at construction.
+         * It is called on the validation thread, after the callbacks, and
+         * should return quickly.
+         */
+        public Subscription subscribe(ValidationInterfaceCallbacks subscriber) {
+            return subscribe(subscriber, null);
+        }
+
+        /**
+         * Adds {@code subscriber}, called on {@code executor}. It sees the
+         * events one at a time and in the order they were raised, however many
+         * threads the executor has. Each event holds its own reference to the
+         * block, the block is released once the subscriber returned.
+         */
+        public Subscription subscribe(ValidationInterfaceCallbacks subscriber, Executor executor) {
+            ValidationSubscriber adapter =
+                new ValidationSubscriber(subscriber, executor == null ? null : new SerialExecutor(executor));
+            listeners.add(adapter);
+            return new Subscription(adapter, () -> listeners.remove(adapter));
+        }
+
+        /**
+         * Whether an upcall is registered for {@code event}.
+         */
+        public boolean isRegistered(ValidationEvent event) {
+            return events.contains(event);
+        }
+
+        /**
+         * Waits until the queued events have been delivered. Block tree
+         * entries point into a chainstate manager, drain the queue before the
+         * manager is closed. Returns right away without queued dispatch.
+         */
+        public void awaitDelivery() {
+            if (dispatcher != null) {
+                dispatcher.awaitDelivery();
+            }
+        }
+
+        /**
+         * Events dropped by {@link OverflowPolicy#DROP_OLDEST}.
+         */
+        public long getDroppedNotifications() {
+            return dispatcher == null ? 0 : dispatcher.getDropped();
+        }
+
+        /**
+         * Delivers the queued events, if any, and releases the upcall stubs.
+         * The context using this manager has to be closed first.
+         */
         @Override
         public void close() {
+            if (dispatcher != null) {
+                dispatcher.close();
+            }
             if (arena != null) {
                 arena.close();
             }
         }
+
+        // Turns queued records back into callback invocations
+        private static final class Delivery implements NotificationDispatcher.Handler {
+            private final ValidationInterfaceCallbacks callbacks;
+            // Only used on the consumer thread
+            private final Block block = Block.view();
+            private final BlockTreeEntry entry = BlockTreeEntry.view();
+
+            Delivery(ValidationInterfaceCallbacks callbacks) {
+                this.callbacks = callbacks;
+            }
+
+            @Override
+            public void deliver(NotificationDispatcher.Event event) {
+                block.reset(MemorySegment.ofAddress(event.word0));
+                try {
+                    switch (event.type) {
+                        case BLOCK_CHECKED -> callbacks.blockChecked(block, new BlockValidationState(
+                            ValidationMode.fromByte((byte) event.small0), BlockValidationResult.fromInt(event.small1)));
+                        case POW_VALID_BLOCK -> callbacks.powValidBlock(block, entry(event));
+                        case BLOCK_CONNECTED -> callbacks.blockConnected(block, entry(event));
+                        case BLOCK_DISCONNECTED -> callbacks.blockDisconnected(block, entry(event));
+                        default -> throw new IllegalStateException("Unknown validation event type: " + event.type);
+                    }
+                } finally {
+                    block.reset(MemorySegment.NULL);
+                    entry.reset(MemorySegment.NULL);
+                    discard(event);
+                }
+            }
+
+            @Override
+            public void discard(NotificationDispatcher.Event event) {
+                // Every upcall hands over its own reference to the block
+                btck_block_destroy(MemorySegment.ofAddress(event.word0));
+            }
+
+            private BlockTreeEntry entry(NotificationDispatcher.Event event) {
+                return entry.reset(MemorySegment.ofAddress(event.word1));
+            }
+        }
+    }
+
+    // Flyweights handed to callbacks, one set per upcall thread
+    private static final class UpcallViews {
+        private static final ThreadLocal<UpcallViews> CURRENT = ThreadLocal.withInitial(UpcallViews::new);
+
+        final Block block = Block.view();
+        final BlockTreeEntry entry = BlockTreeEntry.view();
+        final BlockValidationState state = BlockValidationState.view();
+        final NativeText text = new NativeText();
+        private boolean inUse;
+
+        static UpcallViews acquire() {
+            UpcallViews views = CURRENT.get();
+            if (views.inUse) {
+                // A callback called back into the kernel, which raised another event
+                return new UpcallViews();
+            }
+            views.inUse = true;
+            return views;
+        }
+
+        void release() {
+            block.reset(MemorySegment.NULL);
+            entry.reset(MemorySegment.NULL);
+            state.reset(MemorySegment.NULL);
+            text.invalidate();
+            inUse = false;
+        }
+    }
+
+    // ===== Subscriptions =====
+    /**
+     * A subscriber added to a manager at runtime.
+     */
+    public static final class Subscription implements AutoCloseable {
+        private final Subscriber subscriber;
+        private final Runnable remove;
+
+        Subscription(Subscriber subscriber, Runnable remove) {
+            this.subscriber = subscriber;
+            this.remove = remove;
+        }
+
+        public boolean isActive() {
+            return subscriber.active;
+        }
+
+        /**
+         * Events handed to the subscriber's executor that it has not finished
+         * yet. Always 0 for subscribers called on the kernel thread.
+         */
+        public int getPendingEvents() {
+            return subscriber.executor == null ? 0 : subscriber.executor.pending.get();
+        }
+
+        /**
+         * Stops delivery to the subscriber. Events raised before may still be
+         * running on its executor, queued ones are released without being
+         * delivered.
+         */
+        @Override
+        public void close() {
+            subscriber.active = false;
+            remove.run();
+        }
+    }
+
+    private abstract static class Subscriber {
+        final SerialExecutor executor;
+        volatile boolean active = true;
+
+        Subscriber(SerialExecutor executor) {
+            this.executor = executor;
+        }
+
+        // Runs on the upcall thread, nothing may escape from here
+        final void dispatch(Runnable delivery, Runnable release) {
+            if (executor == null) {
+                try {
+                    delivery.run();
+                } catch (Throwable t) {
+                    report(t);
+                }
+                return;
+            }
+            executor.execute(() -> {
+                try {
+                    if (active) {
+                        delivery.run();
+                    }
+                } finally {
+                    if (release != null) {
+                        release.run();
+                    }
+                }
+            }, release);
+        }
+    }
+
+    private static final class KernelSubscriber extends Subscriber implements KernelNotificationInterfaceCallbacks {
+        private final KernelNotificationInterfaceCallbacks target;
+
+        KernelSubscriber(KernelNotificationInterfaceCallbacks target, SerialExecutor executor) {
+            super(executor);
+            this.target = target;
+        }
+
+        @Override
+        public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+            BlockTreeEntry entry = executor == null || blockIndex == null ? blockIndex : blockIndex.copy();
+            dispatch(() -> target.blockTip(state, entry, verificationProgress), null);
+        }
+
+        @Override
+        public void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+            dispatch(() -> target.headerTip(state, height, timestamp, presync), null);
+        }
+
+        @Override
+        public void progress(String title, int progressPercent, boolean resumePossible) {
+            dispatch(() -> target.progress(title, progressPercent, resumePossible), null);
+        }
+
+        @Override
+        public void warningSet(Warning warning, String message) {
+            dispatch(() -> target.warningSet(warning, message), null);
+        }
+
+        @Override
+        public void warningUnset(Warning warning) {
+            dispatch(() -> target.warningUnset(warning), null);
+        }
+
+        @Override
+        public void flushError(String message) {
+            dispatch(() -> target.flushError(message), null);
+        }
+
+        @Override
+        public void fatalError(String message) {
+            dispatch(() -> target.fatalError(message), null);
+        }
+
+        // Messages are views of kernel memory, they are copied for the executor
+
+        @Override
+        public void progress(CharSequence title, int progressPercent, boolean resumePossible) {
+            if (executor == null) {
+                dispatch(() -> target.progress(title, progressPercent, resumePossible), null);
+            } else {
+                progress(title.toString(), progressPercent, resumePossible);
+            }
+        }
+
+        @Override
+        public void warningSet(Warning warning, CharSequence message) {
+            if (executor == null) {
+                dispatch(() -> target.warningSet(warning, message), null);
+            } else {
+                warningSet(warning, message.toString());
+            }
+        }
+
+        @Override
+        public void flushError(CharSequence message) {
+            if (executor == null) {
+                dispatch(() -> target.flushError(message), null);
+            } else {
+                flushError(message.toString());
+            }
+        }
+
+        @Override
+        public void fatalError(CharSequence message) {
+            if (executor == null) {
+                dispatch(() -> target.fatalError(message), null);
+            } else {
+                fatalError(message.toString());
+            }
+        }
+    }
+
+    private static final class ValidationSubscriber extends Subscriber implements ValidationInterfaceCallbacks {
+        private final ValidationInterfaceCallbacks target;
+
+        ValidationSubscriber(ValidationInterfaceCallbacks target, SerialExecutor executor) {
+            super(executor);
+            this.target = target;
+        }
+
+        @Override
+        public void blockChecked(Block block, BlockValidationState state) {
+            if (executor == null) {
+                dispatch(() -> target.blockChecked(block, state), null);
+                return;
+            }
+            // The state only lives for the duration of the upcall
+            BlockValidationState detached =
+                new BlockValidationState(state.getValidationMode(), state.getBlockValidationResult());
+            Block copy = retain(block);
+            dispatch(() -> target.blockChecked(copy, detached), release(copy));
+        }
+
+        @Override
+        public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+            Block copy = retain(block);
+            BlockTreeEntry entry = retain(blockIndex);
+            dispatch(() -> target.powValidBlock(copy, entry), release(copy));
+        }
+
+        @Override
+        public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+            Block copy = retain(block);
+            BlockTreeEntry entry = retain(blockIndex);
+            dispatch(() -> target.blockConnected(copy, entry), release(copy));
+        }
+
+        @Override
+        public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+            Block copy = retain(block);
+            BlockTreeEntry entry = retain(blockIndex);
+            dispatch(() -> target.blockDisconnected(copy, entry), release(copy));
+        }
+
+        private Block retain(Block block) {
+            return executor == null ? block : block.copy();
+        }
+
+        private BlockTreeEntry retain(BlockTreeEntry entry) {
+            return executor == null ? entry : entry.copy();
+        }
+
+        private Runnable release(Block copy) {
+            if (executor == null) {
+                return null;
+            }
+            return () -> {
+                btck_block_destroy(copy.getInner());
+                copy.reset(MemorySegment.NULL);
+            };
+        }
+    }
+
+    /**
+     * Runs tasks on another executor one at a time, in submission order.
+     */
+    private static final class SerialExecutor {
+        private final Executor executor;
+        private final Queue<Runnable[]> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicInteger pending = new AtomicInteger();
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        // Each task comes with what releases its resources if it never runs
+        void execute(Runnable task, Runnable release) {
+            pending.incrementAndGet();
+            tasks.add(new Runnable[] {task, release});
+            schedule();
+        }
+
+        private void schedule() {
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // The executor is gone, nothing queued will ever run
+                    Runnable[] task;
+                    while ((task = tasks.poll()) != null) {
+                        pending.decrementAndGet();
+                        if (task[1] != null) {
+                            task[1].run();
+                        }
+                    }
+                    scheduled.set(false);
+                    report(e);
+                }
+            }
+        }
+
+        private void drain() {
+            Runnable[] task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task[0].run();
+                } catch (Throwable t) {
+                    report(t);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+            scheduled.set(false);
+            // A task may have been queued after the last poll but before the flag was cleared
+            schedule();
+        }
+    }
+
+    private static void report(Throwable t) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
     }
 }
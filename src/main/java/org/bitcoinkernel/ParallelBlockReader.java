@@ -0,0 +1,247 @@
+package org.bitcoinkernel;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.Chainstate.*;
+import static org.bitcoinkernel.Blocks.*;
+
+/**
+ * Reads the blocks of a height range of the active chain on several threads
+ * and hands them out in height order.
+ *
+ * Reads run ahead of the consumer by a window of heights. The window starts
+ * at the number of threads and adapts to the consumer: it doubles when the
+ * consumer has to wait for the next block, up to the maximum, and shrinks by
+ * one when the next block was already read, down to the number of threads.
+ * A slow consumer so only keeps as many blocks in memory as it takes to keep
+ * the readers busy, a fast one gets the full read-ahead.
+ *
+ * The range is fixed when the reader is created. Not thread safe, one thread
+ * consumes the blocks. Every {@link BlockRead} handed out has to be closed,
+ * and the reader closed before the chainstate manager.
+ */
+public class ParallelBlockReader implements Iterator<ParallelBlockReader.BlockRead>, AutoCloseable {
+
+    private static final int WINDOW_PER_THREAD = 8;
+
+    private final Chain chain;
+    private final ChainstateManager chainman;
+    private final boolean spentOutputs;
+    private final ExecutorService executor;
+    private final int minWindow;
+    private final int maxWindow;
+    private final ArrayDeque<CompletableFuture<BlockRead>> pending = new ArrayDeque<>();
+
+    private int window;
+    private int nextSubmit;
+    private final int toHeight;
+    private long consumerWaits;
+    private boolean closed;
+
+    /**
+     * @param toHeight Exclusive end of the range
+     * @param spentOutputs Whether to read the spent outputs of each block as well
+     */
+    public ParallelBlockReader(ChainstateManager chainman, int fromHeight, int toHeight, int threads,
+                               boolean spentOutputs) {
+        this(chainman, fromHeight, toHeight, threads, threads * WINDOW_PER_THREAD, spentOutputs);
+    }
+
+    /**
+     * @param toHeight Exclusive end of the range
+     * @param maxWindow Maximum number of blocks read ahead of the consumer
+     * @param spentOutputs Whether to read the spent outputs of each block as well
+     */
+    public ParallelBlockReader(ChainstateManager chainman, int fromHeight, int toHeight, int threads,
+                               int maxWindow, boolean spentOutputs) {
+        chainman.checkClosed();
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        if (maxWindow < threads) {
+            throw new IllegalArgumentException("Read-ahead window must be at least the thread count: " + maxWindow);
+        }
+        Chain chain = chainman.getChain();
+        if (fromHeight < 0 || toHeight < fromHeight || toHeight > chain.getHeight() + 1) {
+            throw new IllegalArgumentException("Invalid height range: [" + fromHeight + ", " + toHeight + ")");
+        }
+        this.chain = chain;
+        this.chainman = chainman;
+        this.spentOutputs = spentOutputs;
+        this.nextSubmit = fromHeight;
+        this.toHeight = toHeight;
+        this.minWindow = threads;
+        this.maxWindow = maxWindow;
+        this.window = threads;
+        this.executor = Executors.newFixedThreadPool(threads,
+            Thread.ofPlatform().name("bitcoinkernel-block-reader-", 0).daemon().factory());
+        fill();
+    }
+
+    @Override
+    public boolean hasNext() {
+        checkClosed();
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Returns the block at the next height, waiting for it to be read.
+     *
+     * @throws RuntimeException If the block or its spent outputs could not be read
+     */
+    @Override
+    public BlockRead next() {
+        checkClosed();
+        CompletableFuture<BlockRead> head = pending.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        if (head.isDone()) {
+            window = Math.max(minWindow, window - 1);
+        } else {
+            consumerWaits++;
+            window = Math.min(maxWindow, window * 2);
+        }
+        // Keeps the readers busy while the consumer works on this block
+        fill();
+        try {
+            return head.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Current number of blocks read ahead of the consumer.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Number of times the consumer had to wait for a block to be read.
+     */
+    public long getConsumerWaits() {
+        return consumerWaits;
+    }
+
+    /**
+     * Stops reading ahead. Waits for the reads in progress and closes the
+     * blocks nobody took.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (CompletableFuture<BlockRead> future : pending) {
+            if (!future.isCompletedExceptionally()) {
+                future.join().close();
+            }
+        }
+        pending.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fill() {
+        while (nextSubmit < toHeight && pending.size() < window) {
+            int height = nextSubmit++;
+            pending.add(CompletableFuture.supplyAsync(() -> read(height), executor));
+        }
+    }
+
+    private BlockRead read(int height) {
+        BlockTreeEntry entry = chain.getByHeight(height);
+        Block block = chainman.readBlock(entry);
+        if (block == null) {
+            throw new RuntimeException("Failed to read block at height: " + height);
+        }
+        BlockSpentOutputs undo = null;
+        if (spentOutputs) {
+            undo = chainman.readBlockSpentOutputs(entry);
+            if (undo == null) {
+                block.close();
+                throw new RuntimeException("Failed to read spent outputs at height: " + height);
+            }
+        }
+        return new BlockRead(height, entry, block, undo);
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new IllegalStateException("ParallelBlockReader has been closed");
+        }
+    }
+
+    /**
+     * A block read at one height, owned by the consumer.
+     */
+    public static final class BlockRead implements AutoCloseable {
+        private final int height;
+        private final BlockTreeEntry entry;
+        private final Block block;
+        private final BlockSpentOutputs spentOutputs;
+
+        BlockRead(int height, BlockTreeEntry entry, Block block, BlockSpentOutputs spentOutputs) {
+            this.height = height;
+            this.entry = entry;
+            this.block = block;
+            this.spentOutputs = spentOutputs;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public BlockTreeEntry getEntry() {
+            return entry;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        /**
+         * @return Null unless the reader was asked for spent outputs
+         */
+        public BlockSpentOutputs getSpentOutputs() {
+            return spentOutputs;
+        }
+
+        /**
+         * Closes the block and its spent outputs.
+         */
+        @Override
+        public void close() {
+            block.close();
+            if (spentOutputs != null) {
+                spentOutputs.close();
+            }
+        }
+    }
+}
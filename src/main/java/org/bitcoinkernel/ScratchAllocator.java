@@ -0,0 +1,80 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.*;
+import java.util.Arrays;
+
+/**
+ * Thread-local stack allocator for the short-lived native memory a wrapper
+ * method needs around its downcalls: out-params, 32 byte hash buffers,
+ * pointer arrays and copies of caller supplied byte arrays.
+ *
+ * <pre>{@code
+ * try (var scratch = ScratchAllocator.push()) {
+ *     MemorySegment output = scratch.allocate(32);
+ *     btck_block_hash_to_bytes(inner, output);
+ *     return output.toArray(ValueLayout.JAVA_BYTE);
+ * }
+ * }</pre>
+ *
+ * Every thread owns one fixed block that frames slice from and hand back on
+ * close, so a steady state of calls allocates nothing. Requests that do not
+ * fit in the remaining block spill into a confined arena which is released
+ * when the outermost frame closes. Segments are zeroed, and only valid on the
+ * allocating thread until their frame is closed.
+ */
+final class ScratchAllocator implements SegmentAllocator, AutoCloseable {
+    static final long BLOCK_SIZE = 8 * 1024;
+
+    private static final ThreadLocal<ScratchAllocator> LOCAL = ThreadLocal.withInitial(ScratchAllocator::new);
+
+    private final MemorySegment block;
+    private final long base;
+    private long offset;
+    private long[] marks = new long[8];
+    private int depth;
+    private Arena overflow;
+
+    private ScratchAllocator() {
+        // The block has to outlive the thread-local, so leave freeing it to the GC
+        this.block = Arena.ofAuto().allocate(BLOCK_SIZE, 16);
+        this.base = block.address();
+    }
+
+    /**
+     * Opens a new frame on the calling thread's allocator. Everything allocated
+     * until the matching {@link #close()} is released together.
+     */
+    static ScratchAllocator push() {
+        ScratchAllocator scratch = LOCAL.get();
+        if (scratch.depth == scratch.marks.length) {
+            scratch.marks = Arrays.copyOf(scratch.marks, scratch.depth * 2);
+        }
+        scratch.marks[scratch.depth++] = scratch.offset;
+        return scratch;
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment) {
+        if (depth == 0) {
+            throw new IllegalStateException("Scratch allocator used outside of a frame");
+        }
+        long start = ((base + offset + byteAlignment - 1) & -byteAlignment) - base;
+        if (start + byteSize <= BLOCK_SIZE) {
+            offset = start + byteSize;
+            return block.asSlice(start, byteSize).fill((byte) 0);
+        }
+        if (overflow == null) {
+            overflow = Arena.ofConfined();
+        }
+        return overflow.allocate(byteSize, byteAlignment);
+    }
+
+    @Override
+    public void close() {
+        offset = marks[--depth];
+        if (depth == 0 && overflow != null) {
+            overflow.close();
+            overflow = null;
+        }
+    }
+}
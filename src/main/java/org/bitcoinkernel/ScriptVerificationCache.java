@@ -0,0 +1,305 @@
+package org.bitcoinkernel;
+
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import org.bitcoinkernel.KernelTypes.KernelException.ScriptVerifyError;
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+import org.bitcoinkernel.jextract.bitcoinkernel_h;
+
+import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
+import static org.bitcoinkernel.KernelData.*;
+import static org.bitcoinkernel.Transactions.*;
+
+/**
+ * Fixed size cache of successful script verifications.
+ *
+ * An entry records that one input verified under a set of flags. It is keyed
+ * by a salted SHA-256 over the transaction including its witness, the input
+ * index, the flags, the script and amount being spent, and all spent outputs
+ * passed along. The txid alone is not enough, it does not commit to the
+ * witness. Failures are never cached, so an invalid input always reaches the
+ * kernel and reports its error.
+ *
+ * Entries are 128 bit fingerprints in a set associative table with CLOCK
+ * eviction inside each set. Lookups are lock free in the common case, inserts
+ * take a lock that covers a stripe of sets.
+ */
+public class ScriptVerificationCache {
+
+    private static final int WAYS = 8;
+    private static final int MAX_STRIPES = 256;
+    private static final int DIGEST_SIZE = 32;
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(ScriptVerificationCache::newSha256);
+
+    private final byte[] salt = new byte[DIGEST_SIZE];
+    private final int setMask;
+    // Two longs per entry, an entry whose first long is 0 is empty
+    private final long[] fingerprints;
+    private final byte[] referenced;
+    private final byte[] hands;
+    private final StampedLock[] locks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder insertions = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of cached verifications, rounded up to a power of two
+     */
+    public ScriptVerificationCache(int capacity) {
+        if (capacity < 1 || capacity > (1 << 28)) {
+            throw new IllegalArgumentException("Cache capacity out of range: " + capacity);
+        }
+        int entries = Math.max(WAYS, Integer.highestOneBit(capacity - 1) << 1);
+        int sets = entries / WAYS;
+        this.setMask = sets - 1;
+        this.fingerprints = new long[entries * 2];
+        this.referenced = new byte[entries];
+        this.hands = new byte[sets];
+        this.locks = new StampedLock[Math.min(sets, MAX_STRIPES)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new StampedLock();
+        }
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Same contract as {@link ScriptPubkey#verify}, but returns without
+     * calling into the kernel if the input already verified with the same
+     * arguments.
+     */
+    public int verify(ScriptPubkey scriptPubkey, long amount, Transaction txTo, TransactionOutput[] spentOutputs,
+                      int inputIndex, int flags) throws KernelTypes.KernelException {
+        ScriptPubkey.checkFlags(flags);
+        scriptPubkey.checkClosed();
+        txTo.checkClosed();
+        if (spentOutputs != null) {
+            for (TransactionOutput output : spentOutputs) {
+                output.checkClosed();
+            }
+        }
+        byte[] txDigest = transactionDigest(txTo);
+        byte[][] outputDigests = outputDigests(spentOutputs);
+        byte[] spentDigest = spentOutputsDigest(spentOutputs, outputDigests);
+        byte[] scriptDigest = scriptDigest(scriptPubkey.getInner());
+
+        long[] key = key(txDigest, spentDigest, inputIndex, flags, amount, scriptDigest);
+        if (lookup(key[0], key[1])) {
+            return 1;
+        }
+        int result = scriptPubkey.verify(amount, txTo, spentOutputs, inputIndex, flags);
+        insert(key[0], key[1]);
+        return result;
+    }
+
+    /**
+     * Same contract as {@link Transaction#verifyAllInputs(TransactionOutput[], int)},
+     * only inputs that are not cached are verified by the kernel.
+     */
+    public InputVerificationResults verifyAllInputs(Transaction tx, TransactionOutput[] spentOutputs, int flags) {
+        int inputs = tx.checkVerifyArguments(spentOutputs, flags);
+        byte[] txDigest = transactionDigest(tx);
+        byte[][] outputDigests = outputDigests(spentOutputs);
+        byte[] spentDigest = spentOutputsDigest(spentOutputs, outputDigests);
+
+        ScriptVerifyError[] errors = new ScriptVerifyError[inputs];
+        try (var scratch = ScratchAllocator.push()) {
+            MemorySegment outputPtrs = null;
+            for (int i = 0; i < inputs; i++) {
+                long amount = bitcoinkernel_critical_h.btck_transaction_output_get_amount(spentOutputs[i].getInner());
+                long[] key = key(txDigest, spentDigest, i, flags, amount, outputDigests[i]);
+                if (lookup(key[0], key[1])) {
+                    continue;
+                }
+                if (outputPtrs == null) {
+                    outputPtrs = Transaction.marshalSpentOutputs(spentOutputs, scratch);
+                }
+                errors[i] = tx.verifyInput(spentOutputs[i], outputPtrs, i, flags);
+                if (errors[i] == null) {
+                    insert(key[0], key[1]);
+                }
+            }
+        }
+        return new InputVerificationResults(errors);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return referenced.length;
+    }
+
+    /**
+     * Drops every entry. The counters are kept.
+     */
+    public void clear() {
+        long[] stamps = new long[locks.length];
+        for (int i = 0; i < locks.length; i++) {
+            stamps[i] = locks[i].writeLock();
+        }
+        try {
+            Arrays.fill(fingerprints, 0);
+            Arrays.fill(referenced, (byte) 0);
+            Arrays.fill(hands, (byte) 0);
+        } finally {
+            for (int i = 0; i < locks.length; i++) {
+                locks[i].unlockWrite(stamps[i]);
+            }
+        }
+    }
+
+    // ===== Table =====
+
+    boolean lookup(long key0, long key1) {
+        int set = (int) key1 & setMask;
+        StampedLock lock = locks[set & (locks.length - 1)];
+        long stamp = lock.tryOptimisticRead();
+        int way = find(set, key0, key1);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                way = find(set, key0, key1);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (way < 0) {
+            misses.increment();
+            return false;
+        }
+        // Racing with eviction only costs the entry its second chance
+        referenced[set * WAYS + way] = 1;
+        hits.increment();
+        return true;
+    }
+
+    void insert(long key0, long key1) {
+        int set = (int) key1 & setMask;
+        StampedLock lock = locks[set & (locks.length - 1)];
+        long stamp = lock.writeLock();
+        try {
+            if (find(set, key0, key1) >= 0) {
+                return;
+            }
+            int base = set * WAYS;
+            int slot = -1;
+            for (int way = 0; way < WAYS; way++) {
+                if (fingerprints[(base + way) * 2] == 0) {
+                    slot = way;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                int hand = hands[set];
+                while (referenced[base + hand] != 0) {
+                    referenced[base + hand] = 0;
+                    hand = (hand + 1) & (WAYS - 1);
+                }
+                slot = hand;
+                hands[set] = (byte) ((hand + 1) & (WAYS - 1));
+                evictions.increment();
+            }
+            fingerprints[(base + slot) * 2] = key0;
+            fingerprints[(base + slot) * 2 + 1] = key1;
+            referenced[base + slot] = 0;
+            insertions.increment();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int find(int set, long key0, long key1) {
+        int base = set * WAYS * 2;
+        for (int way = 0; way < WAYS; way++) {
+            if (fingerprints[base + way * 2] == key0 && fingerprints[base + way * 2 + 1] == key1) {
+                return way;
+            }
+        }
+        return -1;
+    }
+
+    // ===== Keys =====
+
+    private long[] key(byte[] txDigest, byte[] spentDigest, int inputIndex, int flags, long amount, byte[] scriptDigest) {
+        MessageDigest sha256 = SHA256.get();
+        sha256.update(salt);
+        sha256.update(txDigest);
+        sha256.update(spentDigest);
+        byte[] fields = new byte[16];
+        INT_VIEW.set(fields, 0, inputIndex);
+        INT_VIEW.set(fields, 4, flags);
+        LONG_VIEW.set(fields, 8, amount);
+        sha256.update(fields);
+        sha256.update(scriptDigest);
+        byte[] digest = sha256.digest();
+        // Zero marks an empty slot, so it can never be a fingerprint
+        return new long[] {(long) LONG_VIEW.get(digest, 0) | 1, (long) LONG_VIEW.get(digest, 8)};
+    }
+
+    private static byte[] transactionDigest(Transaction tx) {
+        MessageDigest sha256 = SHA256.get();
+        Serializer.digest(bitcoinkernel_h::btck_transaction_to_bytes, tx.getInner(), sha256, "transaction");
+        return sha256.digest();
+    }
+
+    private static byte[] scriptDigest(MemorySegment scriptPubkey) {
+        MessageDigest sha256 = SHA256.get();
+        Serializer.digest(bitcoinkernel_h::btck_script_pubkey_to_bytes, scriptPubkey, sha256, "ScriptPubkey");
+        return sha256.digest();
+    }
+
+    private static byte[][] outputDigests(TransactionOutput[] spentOutputs) {
+        int count = spentOutputs == null ? 0 : spentOutputs.length;
+        byte[][] digests = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            digests[i] = scriptDigest(btck_transaction_output_get_script_pubkey(spentOutputs[i].getInner()));
+        }
+        return digests;
+    }
+
+    private static byte[] spentOutputsDigest(TransactionOutput[] spentOutputs, byte[][] outputDigests) {
+        MessageDigest sha256 = SHA256.get();
+        byte[] amount = new byte[8];
+        for (int i = 0; i < outputDigests.length; i++) {
+            LONG_VIEW.set(amount, 0, bitcoinkernel_critical_h.btck_transaction_output_get_amount(spentOutputs[i].getInner()));
+            sha256.update(amount);
+            sha256.update(outputDigests[i]);
+        }
+        return sha256.digest();
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
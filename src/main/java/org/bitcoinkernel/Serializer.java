@@ -0,0 +1,363 @@
+package org.bitcoinkernel;
+
+import java.io.IOException;
+import java.lang.foreign.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.bitcoinkernel.jextract.btck_WriteBytes;
+
+/**
+ * Drives the kernel's {@code btck_*_to_bytes} functions through a single
+ * process-wide {@code btck_WriteBytes} upcall stub.
+ *
+ * Creating an upcall stub per call is expensive, so the stub is created once
+ * and the {@code user_data} pointer passed with it carries the slot of the
+ * {@link Sink} the calling thread registered. Serialization is synchronous,
+ * so the upcall always runs on the thread that made the downcall and can look
+ * the sink up in that thread's table.
+ */
+final class Serializer {
+
+    // Serialized buffers above this size are not kept around for the next call
+    static final long RETAINED_BUFFER_LIMIT = 4 * 1024 * 1024;
+
+    private static final long INITIAL_BUFFER_SIZE = 4 * 1024;
+
+    private static final MemorySegment WRITE_BYTES = btck_WriteBytes.allocate(Serializer::writeBytes, Arena.global());
+
+    private static final ThreadLocal<ActiveSinks> ACTIVE = ThreadLocal.withInitial(ActiveSinks::new);
+
+    private Serializer() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * One of the {@code btck_*_to_bytes} bindings, e.g. {@code bitcoinkernel_h::btck_block_to_bytes}.
+     */
+    @FunctionalInterface
+    interface ToBytesFunction {
+        int apply(MemorySegment object, MemorySegment writer, MemorySegment userData);
+    }
+
+    /**
+     * Receives the chunks of one serialization call. A chunk points into kernel
+     * memory and is only valid while {@link #write} runs. If {@code write}
+     * throws, the kernel is told to stop and the exception is kept in
+     * {@link #failure()}.
+     */
+    abstract static class Sink {
+        private Throwable failure;
+
+        abstract void write(MemorySegment chunk) throws Exception;
+
+        Throwable failure() {
+            return failure;
+        }
+    }
+
+    /**
+     * Sink that appends every chunk to an off-heap buffer that grows as needed.
+     */
+    static final class GrowableBuffer extends Sink {
+        private MemorySegment buffer;
+        private long size;
+
+        GrowableBuffer(long initialCapacity) {
+            this.buffer = Arena.ofAuto().allocate(initialCapacity);
+        }
+
+        @Override
+        void write(MemorySegment chunk) {
+            long required = size + chunk.byteSize();
+            if (required > buffer.byteSize()) {
+                long capacity = Math.max(required, buffer.byteSize() * 2);
+                MemorySegment grown = Arena.ofAuto().allocate(capacity);
+                MemorySegment.copy(buffer, 0, grown, 0, size);
+                buffer = grown;
+            }
+            MemorySegment.copy(chunk, 0, buffer, size, chunk.byteSize());
+            size = required;
+        }
+
+        long size() {
+            return size;
+        }
+
+        MemorySegment contents() {
+            return buffer.asSlice(0, size);
+        }
+
+        byte[] toByteArray() {
+            return contents().toArray(ValueLayout.JAVA_BYTE);
+        }
+
+        private long capacity() {
+            return buffer.byteSize();
+        }
+
+        private void reset() {
+            size = 0;
+            super.failure = null;
+        }
+    }
+
+    /**
+     * Sink that only counts the bytes it is given.
+     */
+    static final class CountingSink extends Sink {
+        private long size;
+
+        @Override
+        void write(MemorySegment chunk) {
+            size += chunk.byteSize();
+        }
+
+        long size() {
+            return size;
+        }
+    }
+
+    /**
+     * Sink that copies chunks into a caller supplied segment, starting at offset 0.
+     */
+    static final class SegmentSink extends Sink {
+        private final MemorySegment destination;
+        private long position;
+
+        SegmentSink(MemorySegment destination) {
+            this.destination = destination;
+        }
+
+        @Override
+        void write(MemorySegment chunk) {
+            long length = chunk.byteSize();
+            if (length > destination.byteSize() - position) {
+                throw new IndexOutOfBoundsException(
+                    "Destination of " + destination.byteSize() + " bytes is too small for the serialized data");
+            }
+            MemorySegment.copy(chunk, 0, destination, position, length);
+            position += length;
+        }
+
+        long position() {
+            return position;
+        }
+    }
+
+    /**
+     * Sink that hands every chunk to a channel as a direct buffer over kernel
+     * memory, without copying it to the Java heap first.
+     */
+    static final class ChannelSink extends Sink {
+        private final WritableByteChannel channel;
+        private long written;
+
+        ChannelSink(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void write(MemorySegment chunk) throws IOException {
+            ByteBuffer buffer = chunk.asByteBuffer();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+        }
+
+        long written() {
+            return written;
+        }
+    }
+
+    /**
+     * Sink that feeds every chunk into a message digest.
+     */
+    static final class DigestSink extends Sink {
+        private final MessageDigest digest;
+
+        DigestSink(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        void write(MemorySegment chunk) {
+            digest.update(chunk.asByteBuffer());
+        }
+    }
+
+    // Sinks registered by one thread, indexed by the user_data slot
+    private static final class ActiveSinks {
+        private Sink[] sinks = new Sink[4];
+        private int depth;
+        private GrowableBuffer buffer = new GrowableBuffer(INITIAL_BUFFER_SIZE);
+        private boolean bufferInUse;
+
+        int push(Sink sink) {
+            if (depth == sinks.length) {
+                sinks = Arrays.copyOf(sinks, depth * 2);
+            }
+            sinks[depth++] = sink;
+            return depth;
+        }
+
+        void pop() {
+            sinks[--depth] = null;
+        }
+
+        Sink get(long slot) {
+            return slot > 0 && slot <= depth ? sinks[(int) slot - 1] : null;
+        }
+    }
+
+    private static int writeBytes(MemorySegment bytes, long size, MemorySegment userData) {
+        // Exceptions must not escape an upcall, they would take down the JVM
+        Sink sink = null;
+        try {
+            sink = ACTIVE.get().get(userData.address());
+            if (sink == null) {
+                return 1;
+            }
+            sink.write(bytes.reinterpret(size));
+            return 0;
+        } catch (Throwable t) {
+            if (sink != null) {
+                sink.failure = t;
+            }
+            return 1;
+        }
+    }
+
+    /**
+     * Serializes {@code object} into {@code sink}.
+     *
+     * @return true if the kernel reported success and the sink accepted every chunk
+     */
+    static boolean serialize(ToBytesFunction function, MemorySegment object, Sink sink) {
+        ActiveSinks active = ACTIVE.get();
+        int slot = active.push(sink);
+        try {
+            int result = function.apply(object, WRITE_BYTES, MemorySegment.ofAddress(slot));
+            return result == 0 && sink.failure == null;
+        } finally {
+            active.pop();
+        }
+    }
+
+    /**
+     * Runs a serialization pass that only counts bytes.
+     */
+    static long serializedSize(ToBytesFunction function, MemorySegment object, String what) {
+        CountingSink sink = new CountingSink();
+        if (!serialize(function, object, sink)) {
+            throw failure(what, sink.failure());
+        }
+        return sink.size();
+    }
+
+    /**
+     * Serializes {@code object} into {@code destination}, starting at offset 0.
+     *
+     * @return The number of bytes written
+     * @throws IndexOutOfBoundsException If the destination is too small
+     */
+    static long writeTo(ToBytesFunction function, MemorySegment object, MemorySegment destination, String what) {
+        SegmentSink sink = new SegmentSink(destination);
+        if (!serialize(function, object, sink)) {
+            throw failure(what, sink.failure());
+        }
+        return sink.position();
+    }
+
+    /**
+     * Serializes {@code object} into the remaining space of {@code destination}
+     * and advances its position by the number of bytes written. The position is
+     * left unchanged if the serialization fails.
+     *
+     * @return The number of bytes written
+     * @throws BufferOverflowException If there is not enough space remaining
+     */
+    static long writeTo(ToBytesFunction function, MemorySegment object, ByteBuffer destination, String what) {
+        if (destination.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        SegmentSink sink = new SegmentSink(MemorySegment.ofBuffer(destination));
+        if (!serialize(function, object, sink)) {
+            if (sink.failure() instanceof IndexOutOfBoundsException) {
+                throw new BufferOverflowException();
+            }
+            throw failure(what, sink.failure());
+        }
+        destination.position(destination.position() + (int) sink.position());
+        return sink.position();
+    }
+
+    /**
+     * Serializes {@code object} straight into a blocking channel.
+     *
+     * @return The number of bytes written
+     */
+    static long writeTo(ToBytesFunction function, MemorySegment object, WritableByteChannel channel, String what) throws IOException {
+        ChannelSink sink = new ChannelSink(channel);
+        if (!serialize(function, object, sink)) {
+            if (sink.failure() instanceof IOException e) {
+                throw e;
+            }
+            throw failure(what, sink.failure());
+        }
+        return sink.written();
+    }
+
+    /**
+     * Feeds the serialization of {@code object} into {@code digest}.
+     */
+    static void digest(ToBytesFunction function, MemorySegment object, MessageDigest digest, String what) {
+        DigestSink sink = new DigestSink(digest);
+        if (!serialize(function, object, sink)) {
+            throw failure(what, sink.failure());
+        }
+    }
+
+    private static RuntimeException failure(String what, Throwable cause) {
+        if (cause instanceof RuntimeException e) {
+            return e;
+        }
+        return new RuntimeException("Failed to serialize " + what, cause);
+    }
+
+    /**
+     * Serializes {@code object} into a new byte array, going through the
+     * calling thread's reusable off-heap buffer.
+     *
+     * @param what Name of the object for the error message
+     */
+    static byte[] toBytes(ToBytesFunction function, MemorySegment object, String what) {
+        ActiveSinks active = ACTIVE.get();
+        GrowableBuffer buffer;
+        if (active.bufferInUse) {
+            buffer = new GrowableBuffer(INITIAL_BUFFER_SIZE);
+        } else {
+            buffer = active.buffer;
+            active.bufferInUse = true;
+        }
+
+        try {
+            if (!serialize(function, object, buffer)) {
+                throw new RuntimeException("Failed to serialize " + what, buffer.failure());
+            }
+            return buffer.toByteArray();
+        } finally {
+            if (buffer == active.buffer) {
+                buffer.reset();
+                if (buffer.capacity() > RETAINED_BUFFER_LIMIT) {
+                    active.buffer = new GrowableBuffer(INITIAL_BUFFER_SIZE);
+                }
+                active.bufferInUse = false;
+            }
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package org.bitcoinkernel;
 
+import java.io.IOException;
 import java.lang.foreign.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
+import org.bitcoinkernel.jextract.bitcoinkernel_critical_h;
+import org.bitcoinkernel.jextract.bitcoinkernel_h;
 import static org.bitcoinkernel.jextract.bitcoinkernel_h.*;
 import static org.bitcoinkernel.KernelData.*;
 
@@ -12,7 +19,6 @@ public class Transactions {
     // ===== Transaction =====
     public static class Transaction implements AutoCloseable {
         private MemorySegment inner;
-        private final Arena arena;
         private final boolean ownsMemory;
 
         Transaction(MemorySegment inner) {
@@ -24,7 +30,6 @@ public class Transactions {
                 throw new IllegalStateException("Transaction Object cannot be null");
             }
             this.inner = inner;
-            this.arena = null;
             this.ownsMemory = ownsMemory;
         }
 
@@ -32,14 +37,37 @@ public class Transactions {
             if (rawTransaction == null || rawTransaction.length == 0) {
                 throw new IllegalArgumentException("Raw transaction cannot be null or empty");
             }
-            this.arena = Arena.ofConfined();
-            MemorySegment txSegment = arena.allocateFrom(ValueLayout.JAVA_BYTE, rawTransaction);
-            this.inner = btck_transaction_create(txSegment, rawTransaction.length);
-            if (this.inner == MemorySegment.NULL) {
-                arena.close();
+            this.inner = create(MemorySegment.ofArray(rawTransaction));
+            this.ownsMemory = true;
+        }
+
+        /**
+         * Deserializes a transaction from the contents of {@code serialized}.
+         * Native memory is read in place, it only has to stay valid for the
+         * duration of this call.
+         */
+        public static Transaction from(MemorySegment serialized) {
+            if (serialized == null || serialized.byteSize() == 0) {
+                throw new IllegalArgumentException("Raw transaction cannot be null or empty");
+            }
+            return new Transaction(create(serialized), true);
+        }
+
+        /**
+         * Deserializes a transaction from the remaining bytes of {@code serialized}.
+         * The buffer's position is not changed.
+         */
+        public static Transaction from(ByteBuffer serialized) {
+            return from(Deserializer.remaining(serialized));
+        }
+
+        private static MemorySegment create(MemorySegment serialized) {
+            MemorySegment transaction = Deserializer.create(serialized,
+                bitcoinkernel_h::btck_transaction_create, bitcoinkernel_critical_h::btck_transaction_create);
+            if (transaction.address() == 0) {
                 throw new IllegalArgumentException("Failed to create Transaction from raw data");
             }
-            this.ownsMemory = true;
+            return transaction;
         }
 
         public Transaction copy() {
@@ -52,18 +80,18 @@ public class Transactions {
         }
 
         public long countInputs() {
-            return btck_transaction_count_inputs(inner);
+            return bitcoinkernel_critical_h.btck_transaction_count_inputs(inner);
         }
 
         public long countOutputs() {
-            return btck_transaction_count_outputs(inner);
+            return bitcoinkernel_critical_h.btck_transaction_count_outputs(inner);
         }
 
         public TransactionInput getInput(long index) {
             if (index < 0 || index >= countInputs()) {
                 throw new IndexOutOfBoundsException("Index out of bounds: " + index);
             }
-            MemorySegment inputStr = btck_transaction_get_input_at(inner, index);
+            MemorySegment inputStr = bitcoinkernel_critical_h.btck_transaction_get_input_at(inner, index);
             return new TransactionInput(inputStr);
         }
 
@@ -71,7 +99,7 @@ public class Transactions {
             if (index < 0 || index >= countOutputs()) {
                 throw new IndexOutOfBoundsException("Output index out of bounds: " + index);
             }
-            MemorySegment outputPtr = btck_transaction_get_output_at(inner, index);
+            MemorySegment outputPtr = bitcoinkernel_critical_h.btck_transaction_get_output_at(inner, index);
             return new TransactionOutput(outputPtr);
         }
 
@@ -80,6 +108,140 @@ public class Transactions {
             return new Txid(txidPtr);
         }
 
+        public TxidValue getTxidValue() {
+            checkClosed();
+            return TxidValue.read(bitcoinkernel_critical_h.btck_transaction_get_txid(inner));
+        }
+
+        public byte[] toBytes() {
+            checkClosed();
+            return Serializer.toBytes(bitcoinkernel_h::btck_transaction_to_bytes, inner, "transaction");
+        }
+
+        /**
+         * Computes the size of the serialized transaction. This runs a full
+         * serialization pass without storing any of the bytes.
+         */
+        public long serializedSize() {
+            checkClosed();
+            return Serializer.serializedSize(bitcoinkernel_h::btck_transaction_to_bytes, inner, "transaction");
+        }
+
+        /**
+         * Serializes the transaction into {@code destination}, starting at offset 0.
+         *
+         * @return The number of bytes written
+         * @throws IndexOutOfBoundsException If the destination is smaller than
+         *         {@link #serializedSize()}. Part of it may have been written.
+         */
+        public long writeTo(MemorySegment destination) {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_transaction_to_bytes, inner, destination, "transaction");
+        }
+
+        /**
+         * Serializes the transaction into the remaining space of
+         * {@code destination} and advances its position.
+         *
+         * @return The number of bytes written
+         * @throws java.nio.BufferOverflowException If the remaining space is too small.
+         *         The position is unchanged, but part of the buffer may have been written.
+         */
+        public long writeTo(ByteBuffer destination) {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_transaction_to_bytes, inner, destination, "transaction");
+        }
+
+        /**
+         * Serializes the transaction into a blocking channel.
+         *
+         * @return The number of bytes written
+         */
+        public long writeTo(WritableByteChannel channel) throws IOException {
+            checkClosed();
+            return Serializer.writeTo(bitcoinkernel_h::btck_transaction_to_bytes, inner, channel, "transaction");
+        }
+
+        /**
+         * Verifies every input of the transaction against the outputs it
+         * spends. The spent output pointers are marshalled once and shared by
+         * all inputs.
+         *
+         * @param spentOutputs The outputs spent by each input, in input order
+         * @param flags        Script verification flags
+         */
+        public InputVerificationResults verifyAllInputs(TransactionOutput[] spentOutputs, int flags) {
+            int inputs = checkVerifyArguments(spentOutputs, flags);
+            KernelTypes.KernelException.ScriptVerifyError[] errors = new KernelTypes.KernelException.ScriptVerifyError[inputs];
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment outputPtrs = marshalSpentOutputs(spentOutputs, scratch);
+                for (int i = 0; i < inputs; i++) {
+                    errors[i] = verifyInput(spentOutputs[i], outputPtrs, i, flags);
+                }
+            }
+            return new InputVerificationResults(errors);
+        }
+
+        /**
+         * Verifies every input of the transaction in parallel on {@code pool}.
+         * Only worth it for transactions with many inputs, for small ones the
+         * task overhead outweighs the verification.
+         *
+         * @param spentOutputs The outputs spent by each input, in input order
+         * @param flags        Script verification flags
+         * @param pool         Pool the inputs are verified on
+         */
+        public InputVerificationResults verifyAllInputs(TransactionOutput[] spentOutputs, int flags, ForkJoinPool pool) {
+            int inputs = checkVerifyArguments(spentOutputs, flags);
+            KernelTypes.KernelException.ScriptVerifyError[] errors = new KernelTypes.KernelException.ScriptVerifyError[inputs];
+            // The pointer array is read by the pool's workers, so it cannot live in scratch memory
+            try (Arena arena = Arena.ofShared()) {
+                MemorySegment outputPtrs = marshalSpentOutputs(spentOutputs, arena);
+                pool.submit(() -> IntStream.range(0, inputs).parallel()
+                    .forEach(i -> errors[i] = verifyInput(spentOutputs[i], outputPtrs, i, flags)))
+                    .join();
+            }
+            return new InputVerificationResults(errors);
+        }
+
+        int checkVerifyArguments(TransactionOutput[] spentOutputs, int flags) {
+            checkClosed();
+            ScriptPubkey.checkFlags(flags);
+            long inputs = countInputs();
+            if (spentOutputs == null || spentOutputs.length != inputs) {
+                throw new IllegalArgumentException(
+                    "Expected " + inputs + " spent outputs, one for each input");
+            }
+            for (TransactionOutput output : spentOutputs) {
+                if (output == null) {
+                    throw new IllegalArgumentException("Spent outputs cannot contain null");
+                }
+                output.checkClosed();
+            }
+            return (int) inputs;
+        }
+
+        static MemorySegment marshalSpentOutputs(TransactionOutput[] spentOutputs, SegmentAllocator allocator) {
+            MemorySegment outputPtrs = allocator.allocate(ValueLayout.ADDRESS, spentOutputs.length);
+            for (int i = 0; i < spentOutputs.length; i++) {
+                outputPtrs.setAtIndex(ValueLayout.ADDRESS, i, spentOutputs[i].getInner());
+            }
+            return outputPtrs;
+        }
+
+        KernelTypes.KernelException.ScriptVerifyError verifyInput(
+                TransactionOutput spentOutput, MemorySegment outputPtrs, int inputIndex, int flags) {
+            MemorySegment output = spentOutput.getInner();
+            return ScriptPubkey.verifyInput(
+                btck_transaction_output_get_script_pubkey(output),
+                bitcoinkernel_critical_h.btck_transaction_output_get_amount(output),
+                inner, outputPtrs, spentOutputs(outputPtrs), inputIndex, flags);
+        }
+
+        private static long spentOutputs(MemorySegment outputPtrs) {
+            return outputPtrs.byteSize() / ValueLayout.ADDRESS.byteSize();
+        }
+
         void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("Transaction has been closed");
@@ -96,9 +258,49 @@ public class Transactions {
                 btck_transaction_destroy(inner);
                 inner = MemorySegment.NULL;
             }
-            if (arena != null) {
-                arena.close();
+        }
+    }
+
+    // ===== Input Verification Results =====
+    /**
+     * Per-input outcome of {@link Transaction#verifyAllInputs}.
+     */
+    public static final class InputVerificationResults {
+        private final KernelTypes.KernelException.ScriptVerifyError[] errors;
+
+        InputVerificationResults(KernelTypes.KernelException.ScriptVerifyError[] errors) {
+            this.errors = errors;
+        }
+
+        public int size() {
+            return errors.length;
+        }
+
+        public boolean isValid(int inputIndex) {
+            return errors[inputIndex] == null;
+        }
+
+        /**
+         * @return Why the input failed to verify, or null if it is valid
+         */
+        public KernelTypes.KernelException.ScriptVerifyError getError(int inputIndex) {
+            return errors[inputIndex];
+        }
+
+        public boolean allValid() {
+            return firstInvalid() < 0;
+        }
+
+        /**
+         * @return Index of the first input that failed to verify, or -1 if all are valid
+         */
+        public int firstInvalid() {
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] != null) {
+                    return i;
+                }
             }
+            return -1;
         }
     }
 
@@ -183,7 +385,7 @@ public class Transactions {
 
         public long getIndex() {
             checkClosed();
-            return Integer.toUnsignedLong(btck_transaction_out_point_get_index(inner));
+            return Integer.toUnsignedLong(bitcoinkernel_critical_h.btck_transaction_out_point_get_index(inner));
         }
 
         public Txid getTxid() {
@@ -192,6 +394,11 @@ public class Transactions {
             return new Txid(txidPtr);
         }
 
+        public TxidValue getTxidValue() {
+            checkClosed();
+            return TxidValue.read(btck_transaction_out_point_get_txid(inner));
+        }
+
         private void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("TransactionOutPoint has been closed");
@@ -251,7 +458,7 @@ public class Transactions {
 
         public long getAmount() {
             checkClosed();
-            return btck_transaction_output_get_amount(inner);
+            return bitcoinkernel_critical_h.btck_transaction_output_get_amount(inner);
         }
 
         public ScriptPubkey getScriptPubKey() {
@@ -260,7 +467,7 @@ public class Transactions {
             return new ScriptPubkey(scriptPtr);
         }
 
-        private void checkClosed() {
+        void checkClosed() {
             if (inner == MemorySegment.NULL) {
                 throw new IllegalStateException("TransactionOutput has been closed");
             }
@@ -299,12 +506,12 @@ public class Transactions {
 
         public long getConfirmationHeight() {
             checkClosed();
-            return Integer.toUnsignedLong(btck_coin_confirmation_height(inner));
+            return Integer.toUnsignedLong(bitcoinkernel_critical_h.btck_coin_confirmation_height(inner));
         }
 
         public boolean isCoinbase() {
             checkClosed();
-            return btck_coin_is_coinbase(inner) != 0;
+            return bitcoinkernel_critical_h.btck_coin_is_coinbase(inner) != 0;
         }
 
         public TransactionOutput getOutput() {
@@ -370,13 +577,21 @@ public class Transactions {
 
         public byte[] toBytes() {
             checkClosed();
-            try (var arena = Arena.ofConfined()) {
-                MemorySegment output = arena.allocate(32);
-                btck_txid_to_bytes(inner, output);
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_txid_to_bytes(inner, output);
                 return output.toArray(ValueLayout.JAVA_BYTE);
             }
         }
 
+        /**
+         * Copies the txid to the Java heap.
+         */
+        public TxidValue toValue() {
+            checkClosed();
+            return TxidValue.read(inner);
+        }
+
         public boolean equals(Txid other) {
             checkClosed();
             if (other == null) {
@@ -386,14 +601,19 @@ public class Transactions {
             return btck_txid_equals(inner, other.getInner()) != 0;
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Txid other && equals(other);
+        }
+
         @Override
         public int hashCode() {
-            byte[] bytes = toBytes();
-            int result = 1;
-            for (byte b : bytes) {
-                result = 31 * result + b;
+            checkClosed();
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_txid_to_bytes(inner, output);
+                return Hash256.hashCode(output);
             }
-            return result;
         }
 
         private void checkClosed() {
@@ -415,6 +635,41 @@ public class Transactions {
         }
     }
 
+    // ===== Txid Value =====
+    /**
+     * A txid copied to the Java heap. Unlike {@link Txid} it needs no closing
+     * and can be used as a map key. The kernel has no way to create a txid,
+     * so there is no conversion back to a native handle.
+     */
+    public static final class TxidValue extends Hash256<TxidValue> {
+
+        TxidValue(MemorySegment bytes) {
+            super(bytes);
+        }
+
+        /**
+         * @param bytes The txid in internal byte order, as returned by {@link Txid#toBytes()}
+         */
+        public static TxidValue fromBytes(byte[] bytes) {
+            return new TxidValue(checkBytes(bytes));
+        }
+
+        /**
+         * @param hex The txid as hex in display order
+         */
+        public static TxidValue fromHex(CharSequence hex) {
+            return new TxidValue(parseHex(hex));
+        }
+
+        static TxidValue read(MemorySegment txid) {
+            try (var scratch = ScratchAllocator.push()) {
+                MemorySegment output = scratch.allocate(32);
+                bitcoinkernel_critical_h.btck_txid_to_bytes(txid, output);
+                return new TxidValue(output);
+            }
+        }
+    }
+
     // ===== Transaction Spent Outputs
     public static class TransactionSpentOutputs implements Iterable<Coin> {
         private final MemorySegment inner;
@@ -0,0 +1,526 @@
+// Hand-maintained companion to the jextract output, jextract cannot emit critical downcalls
+
+package org.bitcoinkernel.jextract;
+
+import java.lang.invoke.*;
+import java.lang.foreign.*;
+
+/**
+ * Downcall handles linked with {@link Linker.Option#critical(boolean)}.
+ *
+ * A critical downcall skips the thread state transition of a regular one, and
+ * with heap access allowed it may be handed segments backed by Java arrays. The
+ * price is that the GC cannot make progress while the call runs, so only
+ * functions that are short, never block on a lock and never call back into Java
+ * belong here. Everything else stays in {@link bitcoinkernel_h}.
+ */
+public class bitcoinkernel_critical_h extends bitcoinkernel_h$shared {
+
+    bitcoinkernel_critical_h() {
+        // Should not be called directly
+    }
+
+    private static final Linker.Option CRITICAL = Linker.Option.critical(false);
+
+    private static final Linker.Option CRITICAL_HEAP = Linker.Option.critical(true);
+
+    private static class btck_transaction_create {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_LONG
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_create");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL_HEAP);
+    }
+
+    /**
+     * Critical, heap accepting variant of:
+     * {@snippet lang=c :
+     * btck_Transaction *btck_transaction_create(const void *raw_transaction, size_t raw_transaction_len)
+     * }
+     */
+    public static MemorySegment btck_transaction_create(MemorySegment raw_transaction, long raw_transaction_len) {
+        var mh$ = btck_transaction_create.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_create", raw_transaction, raw_transaction_len);
+            }
+            return (MemorySegment)mh$.invokeExact(raw_transaction, raw_transaction_len);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_script_pubkey_create {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_LONG
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_script_pubkey_create");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL_HEAP);
+    }
+
+    /**
+     * Critical, heap accepting variant of:
+     * {@snippet lang=c :
+     * btck_ScriptPubkey *btck_script_pubkey_create(const void *script_pubkey, size_t script_pubkey_len)
+     * }
+     */
+    public static MemorySegment btck_script_pubkey_create(MemorySegment script_pubkey, long script_pubkey_len) {
+        var mh$ = btck_script_pubkey_create.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_script_pubkey_create", script_pubkey, script_pubkey_len);
+            }
+            return (MemorySegment)mh$.invokeExact(script_pubkey, script_pubkey_len);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_count_outputs {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_LONG,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_count_outputs");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * size_t btck_transaction_count_outputs(const btck_Transaction *transaction)
+     * }
+     */
+    public static long btck_transaction_count_outputs(MemorySegment transaction) {
+        var mh$ = btck_transaction_count_outputs.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_count_outputs", transaction);
+            }
+            return (long)mh$.invokeExact(transaction);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_get_output_at {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_LONG
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_get_output_at");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * const btck_TransactionOutput *btck_transaction_get_output_at(const btck_Transaction *transaction, size_t output_index)
+     * }
+     */
+    public static MemorySegment btck_transaction_get_output_at(MemorySegment transaction, long output_index) {
+        var mh$ = btck_transaction_get_output_at.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_get_output_at", transaction, output_index);
+            }
+            return (MemorySegment)mh$.invokeExact(transaction, output_index);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_count_inputs {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_LONG,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_count_inputs");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * size_t btck_transaction_count_inputs(const btck_Transaction *transaction)
+     * }
+     */
+    public static long btck_transaction_count_inputs(MemorySegment transaction) {
+        var mh$ = btck_transaction_count_inputs.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_count_inputs", transaction);
+            }
+            return (long)mh$.invokeExact(transaction);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_get_input_at {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_LONG
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_get_input_at");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * const btck_TransactionInput *btck_transaction_get_input_at(const btck_Transaction *transaction, size_t input_index)
+     * }
+     */
+    public static MemorySegment btck_transaction_get_input_at(MemorySegment transaction, long input_index) {
+        var mh$ = btck_transaction_get_input_at.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_get_input_at", transaction, input_index);
+            }
+            return (MemorySegment)mh$.invokeExact(transaction, input_index);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_output_get_amount {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_LONG_LONG,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_output_get_amount");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * int64_t btck_transaction_output_get_amount(const btck_TransactionOutput *transaction_output)
+     * }
+     */
+    public static long btck_transaction_output_get_amount(MemorySegment transaction_output) {
+        var mh$ = btck_transaction_output_get_amount.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_output_get_amount", transaction_output);
+            }
+            return (long)mh$.invokeExact(transaction_output);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_out_point_get_index {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_INT,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_out_point_get_index");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * uint32_t btck_transaction_out_point_get_index(const btck_TransactionOutPoint *transaction_out_point)
+     * }
+     */
+    public static int btck_transaction_out_point_get_index(MemorySegment transaction_out_point) {
+        var mh$ = btck_transaction_out_point_get_index.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_out_point_get_index", transaction_out_point);
+            }
+            return (int)mh$.invokeExact(transaction_out_point);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_block_count_transactions {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_LONG,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_block_count_transactions");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * size_t btck_block_count_transactions(const btck_Block *block)
+     * }
+     */
+    public static long btck_block_count_transactions(MemorySegment block) {
+        var mh$ = btck_block_count_transactions.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_block_count_transactions", block);
+            }
+            return (long)mh$.invokeExact(block);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_block_tree_entry_get_height {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_INT,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_block_tree_entry_get_height");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * int32_t btck_block_tree_entry_get_height(const btck_BlockTreeEntry *block_tree_entry)
+     * }
+     */
+    public static int btck_block_tree_entry_get_height(MemorySegment block_tree_entry) {
+        var mh$ = btck_block_tree_entry_get_height.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_block_tree_entry_get_height", block_tree_entry);
+            }
+            return (int)mh$.invokeExact(block_tree_entry);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_block_tree_entry_get_block_hash {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_block_tree_entry_get_block_hash");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * const btck_BlockHash *btck_block_tree_entry_get_block_hash(const btck_BlockTreeEntry *block_tree_entry)
+     * }
+     */
+    public static MemorySegment btck_block_tree_entry_get_block_hash(MemorySegment block_tree_entry) {
+        var mh$ = btck_block_tree_entry_get_block_hash.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_block_tree_entry_get_block_hash", block_tree_entry);
+            }
+            return (MemorySegment)mh$.invokeExact(block_tree_entry);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_coin_confirmation_height {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_INT,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_coin_confirmation_height");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * uint32_t btck_coin_confirmation_height(const btck_Coin *coin)
+     * }
+     */
+    public static int btck_coin_confirmation_height(MemorySegment coin) {
+        var mh$ = btck_coin_confirmation_height.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_coin_confirmation_height", coin);
+            }
+            return (int)mh$.invokeExact(coin);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_coin_is_coinbase {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_INT,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_coin_is_coinbase");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * int btck_coin_is_coinbase(const btck_Coin *coin)
+     * }
+     */
+    public static int btck_coin_is_coinbase(MemorySegment coin) {
+        var mh$ = btck_coin_is_coinbase.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_coin_is_coinbase", coin);
+            }
+            return (int)mh$.invokeExact(coin);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_transaction_get_txid {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.of(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_transaction_get_txid");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * const btck_Txid *btck_transaction_get_txid(const btck_Transaction *transaction)
+     * }
+     */
+    public static MemorySegment btck_transaction_get_txid(MemorySegment transaction) {
+        var mh$ = btck_transaction_get_txid.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_transaction_get_txid", transaction);
+            }
+            return (MemorySegment)mh$.invokeExact(transaction);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_txid_to_bytes {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.ofVoid(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_txid_to_bytes");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * void btck_txid_to_bytes(const btck_Txid *txid, unsigned char output[32])
+     * }
+     */
+    public static void btck_txid_to_bytes(MemorySegment txid, MemorySegment output) {
+        var mh$ = btck_txid_to_bytes.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_txid_to_bytes", txid, output);
+            }
+            mh$.invokeExact(txid, output);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+
+    private static class btck_block_hash_to_bytes {
+        public static final FunctionDescriptor DESC = FunctionDescriptor.ofVoid(
+            bitcoinkernel_h.C_POINTER,
+            bitcoinkernel_h.C_POINTER
+        );
+
+        public static final MemorySegment ADDR = bitcoinkernel_h.SYMBOL_LOOKUP.findOrThrow("btck_block_hash_to_bytes");
+
+        public static final MethodHandle HANDLE = Linker.nativeLinker().downcallHandle(ADDR, DESC, CRITICAL);
+    }
+
+    /**
+     * Critical variant of:
+     * {@snippet lang=c :
+     * void btck_block_hash_to_bytes(const btck_BlockHash *block_hash, unsigned char output[32])
+     * }
+     */
+    public static void btck_block_hash_to_bytes(MemorySegment block_hash, MemorySegment output) {
+        var mh$ = btck_block_hash_to_bytes.HANDLE;
+        try {
+            if (TRACE_DOWNCALLS) {
+                traceDowncall("btck_block_hash_to_bytes", block_hash, output);
+            }
+            mh$.invokeExact(block_hash, output);
+        } catch (Error | RuntimeException ex) {
+           throw ex;
+        } catch (Throwable ex$) {
+           throw new AssertionError("should not reach here", ex$);
+        }
+    }
+}
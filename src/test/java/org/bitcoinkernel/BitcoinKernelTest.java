@@ -4,8 +4,27 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.*;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.bitcoinkernel.Chainstate.*;
@@ -192,6 +211,101 @@ public class BitcoinKernelTest {
         return data;
     }
 
+    /**
+     * Mines a regtest block with only a coinbase on top of {@code prevHash},
+     * given in internal byte order
+     */
+    private static byte[] mineBlock(byte[] prevHash, int height, int time) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        // BIP34 wants the height pushed first, the way CScript() << height encodes it
+        byte[] heightPush;
+        if (height >= 1 && height <= 16) {
+            heightPush = new byte[] {(byte) (0x50 + height)};
+        } else {
+            ByteArrayOutputStream number = new ByteArrayOutputStream();
+            for (int value = height; value > 0; value >>= 8) {
+                number.write(value & 0xff);
+            }
+            byte[] digits = number.toByteArray();
+            if ((digits[digits.length - 1] & 0x80) != 0) {
+                number.write(0);
+                digits = number.toByteArray();
+            }
+            heightPush = new byte[digits.length + 1];
+            heightPush[0] = (byte) digits.length;
+            System.arraycopy(digits, 0, heightPush, 1, digits.length);
+        }
+
+        ByteBuffer tx = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        tx.putInt(1).put((byte) 1).put(new byte[32]).putInt(-1);
+        // Padded with OP_0, a coinbase script needs at least two bytes
+        tx.put((byte) (heightPush.length + 1)).put(heightPush).put((byte) 0);
+        tx.putInt(-1).put((byte) 1).putLong(0).put((byte) 1).put((byte) 0x51).putInt(0);
+        byte[] txBytes = Arrays.copyOf(tx.array(), tx.position());
+
+        ByteBuffer header = ByteBuffer.allocate(80).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x20000000).put(prevHash).put(sha256.digest(sha256.digest(txBytes)))
+            .putInt(time).putInt(0x207fffff).putInt(0);
+        for (int nonce = 0; ; nonce++) {
+            header.putInt(76, nonce);
+            byte[] hash = sha256.digest(sha256.digest(header.array()));
+            // Below the regtest target 0x7fffff << 232
+            if ((hash[31] & 0xff) < 0x7f) {
+                ByteArrayOutputStream block = new ByteArrayOutputStream();
+                block.write(header.array());
+                block.write(1);
+                block.write(txBytes);
+                return block.toByteArray();
+            }
+        }
+    }
+
+    /**
+     * Mines {@code length} blocks on top of {@code forkPoint} and processes
+     * them, returns their hashes from the lowest up
+     */
+    private static List<BlockHashValue> mineBranch(ChainstateManager chainman, BlockTreeEntry forkPoint, int length)
+            throws Exception {
+        int time;
+        try (Block forkBlock = chainman.readBlock(forkPoint)) {
+            time = ByteBuffer.wrap(forkBlock.toBytes()).order(ByteOrder.LITTLE_ENDIAN).getInt(68);
+        }
+        List<BlockHashValue> hashes = new ArrayList<>();
+        byte[] prevHash = forkPoint.getBlockHashValue().toBytes();
+        for (int i = 1; i <= length; i++) {
+            try (Block block = new Block(mineBlock(prevHash, forkPoint.getHeight() + i, time + i))) {
+                assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Mined block should be accepted");
+                BlockHashValue hash = block.getHashValue();
+                hashes.add(hash);
+                prevHash = hash.toBytes();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Dispatcher handler that holds up delivery until released
+     */
+    private static NotificationDispatcher.Handler heldHandler(CountDownLatch release, List<Long> delivered,
+                                                              List<Long> discarded) {
+        return new NotificationDispatcher.Handler() {
+            @Override
+            public void deliver(NotificationDispatcher.Event event) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.add(event.word0);
+            }
+
+            @Override
+            public void discard(NotificationDispatcher.Event event) {
+                discarded.add(event.word0);
+            }
+        };
+    }
+
     /**
      * Sets up chainstate manager with test blocks
      */
@@ -672,4 +786,1493 @@ public class BitcoinKernelTest {
         }
         System.out.println("Iterator with block transactions test passed");
     }
+
+    @Test
+    @Order(13)
+    @DisplayName("Test serialization round trip - block, transaction and script pubkey")
+    public void testSerializationRoundTrip() throws Exception {
+        List<byte[]> blockData = readBlockData();
+        byte[] rawBlock = blockData.get(blockData.size() - 1);
+
+        try (Block block = new Block(rawBlock)) {
+            assertArrayEquals(rawBlock, block.toBytes(), "Block should serialize to its input bytes");
+            // The second call reuses the thread's serialization buffer
+            assertArrayEquals(rawBlock, block.toBytes(), "Repeated serialization should be stable");
+
+            assertEquals(rawBlock.length, block.serializedSize(), "Serialized size should match the input length");
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment segment = arena.allocate(rawBlock.length);
+                assertEquals(rawBlock.length, block.writeTo(segment));
+                assertArrayEquals(rawBlock, segment.toArray(ValueLayout.JAVA_BYTE), "Block written to a segment should match");
+                assertThrows(IndexOutOfBoundsException.class, () -> block.writeTo(segment.asSlice(1)));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(rawBlock.length, block.writeTo(Channels.newChannel(out)));
+            assertArrayEquals(rawBlock, out.toByteArray(), "Block written to a channel should match");
+        }
+
+        byte[] rawTx = hexToBytes("02000000013f7cebd65c27431a90bba7f796914fe8cc2ddfc3f2cbd6f7e5f2fc854534da95000000006b483045022100de1ac3bcdfb0332207c4a91f3832bd2c2915840165f876ab47c5f8996b971c3602201c6c053d750fadde599e6f5c4e1963df0f01fc0d97815e8157e3d59fe09ca30d012103699b464d1d8bc9e47d4fb1cdaa89a1c5783d68363c4dbc4b524ed3d857148617feffffff02836d3c01000000001976a914fc25d6d5c94003bf5b0c7b640a248e2c637fcfb088ac7ada8202000000001976a914fbed3d9b11183209a57999d54d59f67c019e756c88ac6acb0700");
+        try (Transaction tx = new Transaction(rawTx)) {
+            assertArrayEquals(rawTx, tx.toBytes(), "Transaction should serialize to its input bytes");
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(rawTx.length + 4);
+            buffer.position(4);
+            assertEquals(rawTx.length, tx.writeTo(buffer));
+            assertEquals(rawTx.length + 4, buffer.position(), "Buffer position should advance past the transaction");
+            byte[] written = new byte[rawTx.length];
+            buffer.get(4, written);
+            assertArrayEquals(rawTx, written, "Transaction written to a buffer should match");
+
+            ByteBuffer tooSmall = ByteBuffer.allocate(rawTx.length - 1);
+            assertThrows(BufferOverflowException.class, () -> tx.writeTo(tooSmall));
+            assertEquals(0, tooSmall.position(), "Position should be unchanged after an overflow");
+        }
+
+        byte[] rawScript = hexToBytes("76a9144bfbaf6afb76cc5771bc6404810d1cc041a6933988ac");
+        try (ScriptPubkey scriptPubkey = new ScriptPubkey(rawScript)) {
+            assertArrayEquals(rawScript, scriptPubkey.toBytes(), "ScriptPubkey should serialize to its input bytes");
+        }
+        System.out.println("Serialization round trip test passed");
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Test creating blocks, transactions and script pubkeys from segments and buffers")
+    public void testCreateFromSegments() throws Exception {
+        List<byte[]> blockData = readBlockData();
+        byte[] rawBlock = blockData.get(blockData.size() - 1);
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nativeBlock = arena.allocateFrom(ValueLayout.JAVA_BYTE, rawBlock);
+            try (Block block = Block.from(nativeBlock);
+                 Block heapBlock = Block.from(MemorySegment.ofArray(rawBlock))) {
+                assertArrayEquals(rawBlock, block.toBytes(), "Block from a native segment should round trip");
+                assertArrayEquals(rawBlock, heapBlock.toBytes(), "Block from a heap segment should round trip");
+            }
+        }
+
+        byte[] rawTx = hexToBytes("02000000013f7cebd65c27431a90bba7f796914fe8cc2ddfc3f2cbd6f7e5f2fc854534da95000000006b483045022100de1ac3bcdfb0332207c4a91f3832bd2c2915840165f876ab47c5f8996b971c3602201c6c053d750fadde599e6f5c4e1963df0f01fc0d97815e8157e3d59fe09ca30d012103699b464d1d8bc9e47d4fb1cdaa89a1c5783d68363c4dbc4b524ed3d857148617feffffff02836d3c01000000001976a914fc25d6d5c94003bf5b0c7b640a248e2c637fcfb088ac7ada8202000000001976a914fbed3d9b11183209a57999d54d59f67c019e756c88ac6acb0700");
+        ByteBuffer direct = ByteBuffer.allocateDirect(rawTx.length).put(rawTx).flip();
+        try (Transaction tx = Transaction.from(direct)) {
+            assertArrayEquals(rawTx, tx.toBytes(), "Transaction from a direct buffer should round trip");
+            assertEquals(0, direct.position(), "Buffer position should be unchanged");
+        }
+        assertThrows(IllegalArgumentException.class, () -> Transaction.from(MemorySegment.ofArray(new byte[] {1, 2, 3})));
+
+        byte[] rawScript = hexToBytes("76a9144bfbaf6afb76cc5771bc6404810d1cc041a6933988ac");
+        try (ScriptPubkey scriptPubkey = ScriptPubkey.from(ByteBuffer.wrap(rawScript))) {
+            assertArrayEquals(rawScript, scriptPubkey.toBytes(), "ScriptPubkey from a heap buffer should round trip");
+        }
+        System.out.println("Create from segments test passed");
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("Test block hash and txid value types")
+    public void testHashValues() throws Exception {
+        List<byte[]> blockData = readBlockData();
+        Map<BlockHashValue, Integer> heights = new HashMap<>();
+        BlockHashValue previous = null;
+        for (int i = 0; i < blockData.size(); i++) {
+            try (Block block = new Block(blockData.get(i));
+                 BlockHash hash = block.getHash()) {
+                BlockHashValue value = block.getHashValue();
+                assertEquals(value, hash.toValue(), "Heap and native hashes should match");
+                assertEquals(value.hashCode(), hash.hashCode(), "Heap and native hash codes should match");
+                assertArrayEquals(hash.toBytes(), value.toBytes());
+                assertEquals(value, BlockHashValue.fromHex(value.toHex()), "Hex should round trip");
+                assertEquals(value, BlockHashValue.fromBytes(value.toBytes()), "Bytes should round trip");
+                if (previous != null) {
+                    assertEquals(-Integer.signum(previous.compareTo(value)), Integer.signum(value.compareTo(previous)));
+                }
+                try (BlockHash roundTrip = value.toBlockHash()) {
+                    assertTrue(roundTrip.equals((Object) hash), "Converted hash should equal the block hash");
+                }
+                heights.put(value, i);
+                previous = value;
+            }
+        }
+        assertEquals(blockData.size(), heights.size(), "Every block hash should be a distinct map key");
+
+        try (Block block = new Block(blockData.get(blockData.size() - 1))) {
+            Transaction tx = block.getTransaction(0);
+            TxidValue txid = tx.getTxidValue();
+            assertEquals(txid, tx.getTxid().toValue());
+            assertEquals(txid.hashCode(), tx.getTxid().hashCode());
+            assertEquals(txid, TxidValue.fromHex(txid.toString()));
+            assertNotEquals(txid, BlockHashValue.fromBytes(txid.toBytes()), "Txids and block hashes should never be equal");
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> BlockHashValue.fromHex("00"));
+        assertThrows(IllegalArgumentException.class, () -> TxidValue.fromBytes(new byte[31]));
+        System.out.println("Hash value test passed");
+    }
+
+    @Test
+    @Order(16)
+    @DisplayName("Test parallel script re-verification of the active chain")
+    public void testBlockScriptVerifier(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            int tipHeight = chainman.getChain().getHeight();
+            BlockScriptVerifier verifier = new BlockScriptVerifier(
+                chainman, BitcoinKernel.VERIFY_ALL, ForkJoinPool.commonPool(), 2);
+
+            BlockScriptVerifier.RangeResult result = verifier.verify(0, tipHeight);
+            assertEquals(tipHeight + 1, result.getBlocks().size(), "Every block should have a result");
+            assertTrue(result.isValid(), "All inputs of the active chain should verify");
+            assertTrue(result.getInputCount() > 0, "The test chain should spend some outputs");
+            for (int i = 0; i < result.getBlocks().size(); i++) {
+                assertEquals(i, result.getBlocks().get(i).getHeight(), "Results should be in height order");
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> verifier.verify(0, tipHeight + 1));
+            assertThrows(IllegalArgumentException.class, () -> new BlockScriptVerifier(chainman, -1));
+        }
+        System.out.println("Block script verifier test passed");
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("Test verifying all inputs of a transaction at once")
+    public void testVerifyAllInputs() throws Exception {
+        byte[] scriptBytes = hexToBytes("a91434c06f8c87e355e123bdc6dda4ffabc64b6989ef87");
+        byte[] txBytes = hexToBytes("01000000000101d9fd94d0ff0026d307c994d0003180a5f248146efb6371d040c5973f5f66d9df0400000017160014b31b31a6cb654cfab3c50567bcf124f48a0beaecffffffff012cbd1c000000000017a914233b74bf0823fa58bbbd26dfc3bb4ae715547167870247304402206f60569cac136c114a58aedd80f6fa1c51b49093e7af883e605c212bdafcd8d202200e91a55f408a021ad2631bc29a67bd6915b2d7e9ef0265627eabd7f7234455f6012103e7e802f50344303c76d12c089c8724c1b230e3b745693bbe16aad536293d15e300000000");
+        int flags = BitcoinKernel.VERIFY_P2SH | BitcoinKernel.VERIFY_DERSIG | BitcoinKernel.VERIFY_NULLDUMMY |
+                    BitcoinKernel.VERIFY_CHECKLOCKTIMEVERIFY | BitcoinKernel.VERIFY_CHECKSEQUENCEVERIFY |
+                    BitcoinKernel.VERIFY_WITNESS;
+
+        try (ScriptPubkey scriptPubkey = new ScriptPubkey(scriptBytes);
+             Transaction tx = new Transaction(txBytes);
+             TransactionOutput spent = new TransactionOutput(scriptPubkey, 1900000);
+             TransactionOutput wrongAmount = new TransactionOutput(scriptPubkey, 900000)) {
+
+            InputVerificationResults results = tx.verifyAllInputs(new TransactionOutput[] {spent}, flags);
+            assertEquals(1, results.size());
+            assertTrue(results.allValid(), "Input should verify with the right amount");
+
+            InputVerificationResults parallel = tx.verifyAllInputs(
+                new TransactionOutput[] {spent}, flags, ForkJoinPool.commonPool());
+            assertTrue(parallel.allValid(), "Parallel verification should agree");
+
+            InputVerificationResults failed = tx.verifyAllInputs(new TransactionOutput[] {wrongAmount}, flags);
+            assertFalse(failed.isValid(0), "Input should not verify with the wrong amount");
+            assertEquals(0, failed.firstInvalid());
+            assertEquals(KernelTypes.KernelException.ScriptVerifyError.INVALID, failed.getError(0));
+
+            assertThrows(IllegalArgumentException.class, () -> tx.verifyAllInputs(new TransactionOutput[0], flags));
+            assertThrows(IllegalArgumentException.class, () -> tx.verifyAllInputs(new TransactionOutput[] {spent}, -1));
+        }
+        System.out.println("Verify all inputs test passed");
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Test script verification cache")
+    public void testScriptVerificationCache() throws Exception {
+        byte[] scriptBytes = hexToBytes("a91434c06f8c87e355e123bdc6dda4ffabc64b6989ef87");
+        byte[] txBytes = hexToBytes("01000000000101d9fd94d0ff0026d307c994d0003180a5f248146efb6371d040c5973f5f66d9df0400000017160014b31b31a6cb654cfab3c50567bcf124f48a0beaecffffffff012cbd1c000000000017a914233b74bf0823fa58bbbd26dfc3bb4ae715547167870247304402206f60569cac136c114a58aedd80f6fa1c51b49093e7af883e605c212bdafcd8d202200e91a55f408a021ad2631bc29a67bd6915b2d7e9ef0265627eabd7f7234455f6012103e7e802f50344303c76d12c089c8724c1b230e3b745693bbe16aad536293d15e300000000");
+        int flags = BitcoinKernel.VERIFY_P2SH | BitcoinKernel.VERIFY_DERSIG | BitcoinKernel.VERIFY_WITNESS;
+        ScriptVerificationCache cache = new ScriptVerificationCache(1024);
+
+        try (ScriptPubkey scriptPubkey = new ScriptPubkey(scriptBytes);
+             Transaction tx = new Transaction(txBytes);
+             TransactionOutput spent = new TransactionOutput(scriptPubkey, 1900000)) {
+            TransactionOutput[] noSpentOutputs = new TransactionOutput[0];
+
+            cache.verify(scriptPubkey, 1900000, tx, noSpentOutputs, 0, flags);
+            assertEquals(0, cache.getHits());
+            assertEquals(1, cache.getMisses());
+            assertEquals(1, cache.getInsertions());
+
+            cache.verify(scriptPubkey, 1900000, tx, noSpentOutputs, 0, flags);
+            assertEquals(1, cache.getHits(), "Second verification should be a hit");
+
+            // A different amount is a different key, and failures are never cached
+            assertThrows(KernelTypes.KernelException.class,
+                () -> cache.verify(scriptPubkey, 900000, tx, noSpentOutputs, 0, flags));
+            assertThrows(KernelTypes.KernelException.class,
+                () -> cache.verify(scriptPubkey, 900000, tx, noSpentOutputs, 0, flags));
+            assertEquals(1, cache.getInsertions(), "Failed verifications should not be cached");
+
+            assertTrue(cache.verifyAllInputs(tx, new TransactionOutput[] {spent}, flags).allValid());
+            assertTrue(cache.verifyAllInputs(tx, new TransactionOutput[] {spent}, flags).allValid());
+            assertEquals(2, cache.getHits(), "Batch verification should hit on the second call");
+
+            cache.clear();
+            cache.verify(scriptPubkey, 1900000, tx, noSpentOutputs, 0, flags);
+            assertEquals(2, cache.getHits(), "Cleared entries should miss");
+        }
+
+        // Overfilling a set evicts entries instead of growing
+        ScriptVerificationCache small = new ScriptVerificationCache(8);
+        for (long i = 1; i <= 100; i++) {
+            small.insert(i, 0);
+        }
+        assertEquals(8, small.getCapacity());
+        assertEquals(92, small.getEvictions());
+        assertTrue(small.lookup(100, 0), "The newest entry should survive eviction");
+        System.out.println("Script verification cache test passed");
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Test block ingest pipeline - parallel parse, ordered processing")
+    public void testBlockIngestPipeline(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        Files.createDirectories(blocksDir);
+
+        List<byte[]> blockData = readBlockData();
+        ChainstateManagerOptions options = new ChainstateManagerOptions(
+            setup.context,
+            setup.dataDir,
+            blocksDir.toString()
+        );
+
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options)) {
+            List<CompletableFuture<BlockIngestPipeline.IngestResult>> futures = new ArrayList<>();
+            CompletableFuture<BlockIngestPipeline.IngestResult> invalid;
+            try (BlockIngestPipeline pipeline = new BlockIngestPipeline(chainman, 4, 3)) {
+                for (byte[] rawBlock : blockData) {
+                    futures.add(pipeline.submit(rawBlock));
+                    assertTrue(pipeline.getInFlight() <= 3, "In flight blocks should be bounded");
+                }
+                invalid = pipeline.submit(new byte[] {0x00, 0x01});
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                BlockIngestPipeline.IngestResult result = futures.get(i).join();
+                assertEquals(i, result.getSequence());
+                assertTrue(result.isAccepted(), "Block processing should succeed");
+                assertTrue(result.isNewBlock(), "Block should be marked as new");
+            }
+            assertThrows(CompletionException.class, invalid::join);
+            // Blocks only connect if they reached ProcessBlock in order
+            assertEquals(blockData.size(), chainman.getChain().getHeight());
+        }
+        System.out.println("Block ingest pipeline test passed");
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("Test block file reader - read and import blocks from blk*.dat files")
+    public void testBlockFileReader(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        List<byte[]> blockData = readBlockData();
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            assertEquals(blockData.size(), chainman.getChain().getHeight());
+        }
+
+        // The kernel obfuscates new block files, the reader has to undo it
+        try (BlockFileReader reader = new BlockFileReader(blocksDir, ChainType.REGTEST)) {
+            for (byte[] rawBlock : blockData) {
+                try (Block expected = new Block(rawBlock); Block block = reader.next()) {
+                    assertNotNull(block, "Every processed block should be in the block files");
+                    assertEquals(expected.getHashValue(), block.getHashValue());
+                }
+            }
+            assertNull(reader.next());
+            assertEquals(blockData.size(), reader.getBlocksRead());
+        }
+
+        Path importDir = tempDir.resolve("import");
+        Path importBlocksDir = importDir.resolve("blocks");
+        Files.createDirectories(importBlocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(
+            setup.context,
+            importDir.toString(),
+            importBlocksDir.toString()
+        );
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options)) {
+            try (BlockFileReader reader = new BlockFileReader(blocksDir, ChainType.REGTEST)) {
+                BlockFileReader.ImportResult result = reader.importInto(chainman);
+                assertEquals(blockData.size(), result.getAccepted());
+                assertEquals(0, result.getRejected());
+                assertEquals(0, result.getSkipped());
+            }
+            assertEquals(blockData.size(), chainman.getChain().getHeight());
+
+            try (BlockFileReader reader = new BlockFileReader(blocksDir, ChainType.REGTEST)) {
+                BlockFileReader.ImportResult result = reader.importInto(chainman);
+                assertEquals(0, result.getAccepted());
+                assertEquals(blockData.size(), result.getSkipped(), "Known blocks should be skipped");
+            }
+        }
+
+        // Unobfuscated file with padding between records, read without prefetch
+        Path plainFile = tempDir.resolve("blk00000.dat");
+        byte[] magic = BlockFileReader.networkMagic(ChainType.REGTEST);
+        try (OutputStream out = Files.newOutputStream(plainFile)) {
+            for (int i = 0; i < 3; i++) {
+                byte[] rawBlock = blockData.get(i);
+                out.write(magic);
+                out.write(ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(rawBlock.length).array());
+                out.write(rawBlock);
+                out.write(new byte[i + 1]);
+            }
+        }
+        try (BlockFileReader reader = new BlockFileReader(List.of(plainFile), magic, new byte[8], false)) {
+            for (int i = 0; i < 3; i++) {
+                try (Block expected = new Block(blockData.get(i)); Block block = reader.next()) {
+                    assertEquals(expected.getHashValue(), block.getHashValue());
+                }
+            }
+            assertNull(reader.next());
+        }
+        System.out.println("Block file reader test passed");
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("Test async import - progress events and cancellation")
+    public void testImportBlocksAsync(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        List<byte[]> blockData = readBlockData();
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        setupChainstateManagerWithBlocks(setup.context, setup.dataDir).close();
+
+        ChainstateManagerOptions options = new ChainstateManagerOptions(
+            setup.context,
+            setup.dataDir,
+            blocksDir.toString()
+        );
+        assertTrue(options.setWipeDbs(false, true), "Wipe chainstate should succeed");
+
+        List<ImportProgress> events = Collections.synchronizedList(new ArrayList<>());
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options)) {
+            CompletableFuture<Boolean> future = chainman.importBlocksAsync(null, events::add, Duration.ofMinutes(5));
+            assertTrue(future.get(), "Import blocks should succeed");
+            assertEquals(blockData.size(), chainman.getChain().getHeight());
+        }
+        assertFalse(events.isEmpty(), "Import should publish progress");
+        ImportProgress last = events.stream()
+            .filter(event -> event.getKind() == ImportProgress.Kind.BLOCK_TIP)
+            .reduce((first, second) -> second)
+            .orElseThrow();
+        assertEquals(blockData.size(), last.getBlockHeight());
+        assertTrue(last.getBlocksPerSecond() >= 0);
+
+        // Cancelling interrupts the context, so it gets one of its own
+        TestSetup cancelSetup = testingSetup(tempDir.resolve("cancel"));
+        Path cancelBlocksDir = Paths.get(cancelSetup.dataDir, "blocks");
+        Files.createDirectories(cancelBlocksDir);
+        ChainstateManagerOptions cancelOptions = new ChainstateManagerOptions(
+            cancelSetup.context,
+            cancelSetup.dataDir,
+            cancelBlocksDir.toString()
+        );
+        try (ChainstateManager chainman = new ChainstateManager(cancelSetup.context, cancelOptions)) {
+            CompletableFuture<Boolean> future = chainman.importBlocksAsync(new String[] {blocksDir.resolve("blk00000.dat").toString()});
+            if (future.cancel(true)) {
+                assertThrows(CancellationException.class, future::join);
+            }
+        }
+        System.out.println("Async import test passed");
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("Test async process block - correlate validation results")
+    public void testProcessBlockAsync(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        Files.createDirectories(blocksDir);
+
+        List<byte[]> blockData = readBlockData();
+        ChainstateManagerOptions options = new ChainstateManagerOptions(
+            setup.context,
+            setup.dataDir,
+            blocksDir.toString()
+        );
+
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options)) {
+            List<CompletableFuture<BlockValidationOutcome>> futures = new ArrayList<>();
+            for (byte[] rawBlock : blockData) {
+                // The manager copies the block, it can be closed right away
+                try (Block block = new Block(rawBlock)) {
+                    futures.add(chainman.processBlockAsync(block));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                BlockValidationOutcome outcome = futures.get(i).join();
+                assertTrue(outcome.isAccepted(), "Block processing should succeed");
+                assertTrue(outcome.isNewBlock(), "Block should be marked as new");
+                assertEquals(ValidationMode.VALID, outcome.getValidationMode());
+                assertEquals(i + 1, outcome.getConnectedHeight());
+                assertTrue(outcome.isValid());
+            }
+
+            try (Block duplicate = new Block(blockData.get(1))) {
+                BlockValidationOutcome outcome = chainman.processBlockAsync(duplicate).join();
+                assertFalse(outcome.isNewBlock(), "Duplicate block should not be marked as new");
+                assertFalse(outcome.isChecked(), "A known block is not checked again");
+                assertFalse(outcome.isConnected());
+            }
+
+            // Mainnet genesis, its parent is unknown on regtest
+            String wrongChainHex = "0100000000000000000000000000000000000000000000000000000000000000000000003ba3edfd7a7b12b27ac72c3e67768f617fc81bc3888a51323a9fb8aa4b1e5e4a29ab5f49ffff001d1dac2b7c0101000000010000000000000000000000000000000000000000000000000000000000000000ffffffff4d04ffff001d0104455468652054696d65732030332f4a616e2f32303039204368616e63656c6c6f72206f6e206272696e6b206f66207365636f6e64206261696c6f757420666f722062616e6b73ffffffff0100f2052a01000000434104678afdb0fe5548271967f1a67130b7105cd6a828e03909a67962e0ea1f61deb649f6bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac00000000";
+            try (Block wrongChainBlock = new Block(hexToBytes(wrongChainHex))) {
+                BlockValidationOutcome outcome = chainman.processBlockAsync(wrongChainBlock).join();
+                assertFalse(outcome.isAccepted());
+                assertEquals(ValidationMode.INVALID, outcome.getValidationMode());
+                assertFalse(outcome.isValid());
+            }
+        }
+        System.out.println("Async process block test passed");
+    }
+
+    @Test
+    @Order(23)
+    @DisplayName("Test queued notification dispatch - ordering and overflow policies")
+    public void testQueuedNotificationDispatch(@TempDir Path tempDir) throws Exception {
+        setupLogging();
+        List<byte[]> blockData = readBlockData();
+        List<Integer> connectedHeights = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> deliveryThreads = Collections.synchronizedList(new ArrayList<>());
+
+        NotificationsManager.KernelNotificationManager notificationManager =
+            new NotificationsManager.KernelNotificationManager(
+                new NotificationsManager.KernelNotificationInterfaceCallbacks() {
+                    @Override
+                    public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+                        deliveryThreads.add(Thread.currentThread());
+                    }
+
+                    @Override
+                    public void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+                    }
+
+                    @Override
+                    public void progress(String title, int progressPercent, boolean resumePossible) {
+                    }
+
+                    @Override
+                    public void warningSet(Warning warning, String message) {
+                    }
+
+                    @Override
+                    public void warningUnset(Warning warning) {
+                    }
+
+                    @Override
+                    public void flushError(String message) {
+                    }
+
+                    @Override
+                    public void fatalError(String message) {
+                    }
+                },
+                4,
+                NotificationsManager.OverflowPolicy.COALESCE
+            );
+        NotificationsManager.ValidationInterfaceManager validationManager =
+            new NotificationsManager.ValidationInterfaceManager(
+                new NotificationsManager.ValidationInterfaceCallbacks() {
+                    @Override
+                    public void blockChecked(Block block, BlockValidationState state) {
+                        assertEquals(ValidationMode.VALID, state.getValidationMode());
+                    }
+
+                    @Override
+                    public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                    }
+
+                    @Override
+                    public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                        connectedHeights.add(blockIndex.getHeight());
+                    }
+
+                    @Override
+                    public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                    }
+                },
+                8,
+                NotificationsManager.OverflowPolicy.BLOCK
+            );
+
+        ChainParameters chainParams = new ChainParameters(ChainType.REGTEST);
+        ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
+        contextOptions.setChainParams(chainParams);
+        contextOptions.setNotifications(notificationManager);
+        contextOptions.setValidationInterface(validationManager);
+        ContextManager.Context context = new ContextManager.Context(contextOptions);
+
+        Path blocksDir = tempDir.resolve("blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(context, tempDir.toString(), blocksDir.toString());
+        try (ChainstateManager chainman = new ChainstateManager(context, options)) {
+            for (byte[] rawBlock : blockData) {
+                try (Block block = new Block(rawBlock)) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            // Entries point into the block index, deliver before it goes away
+            notificationManager.awaitDelivery();
+            validationManager.awaitDelivery();
+        }
+        context.close();
+        notificationManager.close();
+        validationManager.close();
+        contextOptions.close();
+        chainParams.close();
+
+        assertEquals(blockData.size(), connectedHeights.size(), "BLOCK never loses events");
+        for (int i = 0; i < connectedHeights.size(); i++) {
+            assertEquals(i + 1, connectedHeights.get(i).intValue(), "Events should arrive in order");
+        }
+        assertFalse(deliveryThreads.contains(Thread.currentThread()), "Callbacks should run on the dispatcher");
+
+        // Overflow policies against a consumer that is held up
+        CountDownLatch releaseDropping = new CountDownLatch(1);
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        List<Long> discarded = Collections.synchronizedList(new ArrayList<>());
+        NotificationDispatcher dropping = new NotificationDispatcher("test-drop", 4,
+            NotificationsManager.OverflowPolicy.DROP_OLDEST, new int[0], 1,
+            heldHandler(releaseDropping, delivered, discarded));
+        for (long i = 0; i < 100; i++) {
+            dropping.publish(0, 0, 0, i, 0, 0, null);
+        }
+        assertTrue(dropping.getDropped() > 0, "A full queue should drop instead of blocking");
+        assertEquals(dropping.getDropped(), discarded.size(), "Dropped records should be released");
+        releaseDropping.countDown();
+        dropping.close();
+        assertEquals(99L, delivered.get(delivered.size() - 1).longValue(), "The newest record should survive");
+        assertEquals(100, delivered.size() + discarded.size());
+
+        CountDownLatch releaseCoalescing = new CountDownLatch(1);
+        delivered.clear();
+        NotificationDispatcher coalescing = new NotificationDispatcher("test-coalesce", 2,
+            NotificationsManager.OverflowPolicy.COALESCE, new int[] {0}, 1,
+            heldHandler(releaseCoalescing, delivered, discarded));
+        for (long i = 0; i < 50; i++) {
+            coalescing.publish(0, 0, 0, i, 0, 0, null);
+        }
+        assertTrue(coalescing.getCoalesced() > 0, "A full queue should merge tip records");
+        releaseCoalescing.countDown();
+        coalescing.close();
+        assertEquals(49L, delivered.get(delivered.size() - 1).longValue(), "The latest coalesced record should be delivered");
+        assertEquals(50, delivered.size() + coalescing.getCoalesced());
+        System.out.println("Queued notification dispatch test passed");
+    }
+
+    @Test
+    @Order(24)
+    @DisplayName("Test selective upcall registration and the no-notifications mode")
+    public void testSelectiveRegistration(@TempDir Path tempDir) throws Exception {
+        setupLogging();
+        List<byte[]> blockData = readBlockData();
+        List<Integer> connectedHeights = new ArrayList<>();
+        List<String> unexpected = new ArrayList<>();
+
+        NotificationsManager.ValidationInterfaceManager validationManager =
+            new NotificationsManager.ValidationInterfaceManager(
+                new NotificationsManager.ValidationInterfaceCallbacks() {
+                    @Override
+                    public void blockChecked(Block block, BlockValidationState state) {
+                        unexpected.add("blockChecked");
+                    }
+
+                    @Override
+                    public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                        unexpected.add("powValidBlock");
+                    }
+
+                    @Override
+                    public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                        connectedHeights.add(blockIndex.getHeight());
+                    }
+
+                    @Override
+                    public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                        unexpected.add("blockDisconnected");
+                    }
+                },
+                EnumSet.of(NotificationsManager.ValidationEvent.BLOCK_CONNECTED)
+            );
+        assertTrue(validationManager.isRegistered(NotificationsManager.ValidationEvent.BLOCK_CONNECTED));
+        assertFalse(validationManager.isRegistered(NotificationsManager.ValidationEvent.BLOCK_CHECKED));
+
+        ChainParameters chainParams = new ChainParameters(ChainType.REGTEST);
+        ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
+        contextOptions.setChainParams(chainParams);
+        contextOptions.setValidationInterface(validationManager);
+        ContextManager.Context context = new ContextManager.Context(contextOptions);
+
+        Path blocksDir = tempDir.resolve("blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(context, tempDir.toString(), blocksDir.toString());
+        try (ChainstateManager chainman = new ChainstateManager(context, options)) {
+            for (byte[] rawBlock : blockData) {
+                try (Block block = new Block(rawBlock)) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            try (Block block = new Block(blockData.get(0))) {
+                assertThrows(IllegalStateException.class, () -> chainman.processBlockAsync(block),
+                    "Correlating results needs block checked events");
+            }
+            assertThrows(IllegalStateException.class,
+                () -> chainman.importBlocksAsync(new String[0], progress -> { }, null),
+                "Import progress needs notifications");
+        }
+        context.close();
+        validationManager.close();
+        contextOptions.close();
+        chainParams.close();
+
+        assertTrue(unexpected.isEmpty(), "Unregistered events should never be delivered: " + unexpected);
+        assertEquals(blockData.size(), connectedHeights.size());
+
+        // No callbacks at all
+        Path dataDir = tempDir.resolve("quiet");
+        Files.createDirectories(dataDir.resolve("blocks"));
+        try (BitcoinKernel kernel = new BitcoinKernel(ChainType.REGTEST, dataDir, dataDir.resolve("blocks"))) {
+            ChainstateManager chainman = kernel.getChainstateManager();
+            for (byte[] rawBlock : blockData) {
+                try (Block block = new Block(rawBlock)) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            assertEquals(blockData.size(), chainman.getChain().getHeight());
+        }
+        System.out.println("Selective registration test passed");
+    }
+
+    @Test
+    @Order(25)
+    @DisplayName("Test runtime subscriptions with per-subscriber executors")
+    public void testSubscriptions(@TempDir Path tempDir) throws Exception {
+        setupLogging();
+        List<byte[]> blockData = readBlockData();
+        NotificationsManager.ValidationInterfaceCallbacks noop = new NotificationsManager.ValidationInterfaceCallbacks() {
+            @Override
+            public void blockChecked(Block block, BlockValidationState state) {
+            }
+
+            @Override
+            public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+            }
+
+            @Override
+            public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+            }
+
+            @Override
+            public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+            }
+        };
+        NotificationsManager.ValidationInterfaceManager validationManager =
+            new NotificationsManager.ValidationInterfaceManager(noop);
+
+        List<Integer> inline = new ArrayList<>();
+        List<Integer> pooled = Collections.synchronizedList(new ArrayList<>());
+        List<BlockHashValue> pooledHashes = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> late = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        NotificationsManager.Subscription inlineSubscription = validationManager.subscribe(
+            new NotificationsManager.ValidationInterfaceCallbacks() {
+                @Override
+                public void blockChecked(Block block, BlockValidationState state) {
+                    throw new IllegalStateException("A failing subscriber must not affect the others");
+                }
+
+                @Override
+                public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                }
+
+                @Override
+                public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                    inline.add(blockIndex.getHeight());
+                }
+
+                @Override
+                public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                }
+            });
+        NotificationsManager.Subscription pooledSubscription = validationManager.subscribe(
+            new NotificationsManager.ValidationInterfaceCallbacks() {
+                @Override
+                public void blockChecked(Block block, BlockValidationState state) {
+                    assertEquals(ValidationMode.VALID, state.getValidationMode());
+                }
+
+                @Override
+                public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                }
+
+                @Override
+                public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                    // Blocks stay readable until the subscriber returns
+                    pooledHashes.add(block.getHashValue());
+                    pooled.add(blockIndex.getHeight());
+                }
+
+                @Override
+                public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                }
+            }, pool);
+
+        ChainParameters chainParams = new ChainParameters(ChainType.REGTEST);
+        ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
+        contextOptions.setChainParams(chainParams);
+        contextOptions.setValidationInterface(validationManager);
+        ContextManager.Context context = new ContextManager.Context(contextOptions);
+
+        Path blocksDir = tempDir.resolve("blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(context, tempDir.toString(), blocksDir.toString());
+        int half = blockData.size() / 2;
+        try (ChainstateManager chainman = new ChainstateManager(context, options)) {
+            for (int i = 0; i < blockData.size(); i++) {
+                if (i == half) {
+                    inlineSubscription.close();
+                    validationManager.subscribe(new NotificationsManager.ValidationInterfaceCallbacks() {
+                        @Override
+                        public void blockChecked(Block block, BlockValidationState state) {
+                        }
+
+                        @Override
+                        public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                        }
+
+                        @Override
+                        public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                            late.add(blockIndex.getHeight());
+                        }
+
+                        @Override
+                        public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                        }
+                    });
+                }
+                try (Block block = new Block(blockData.get(i))) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            // Entries point into the block index, let the pool finish before it goes away
+            while (pooledSubscription.getPendingEvents() > 0) {
+                Thread.sleep(1);
+            }
+            pooledSubscription.close();
+            assertFalse(pooledSubscription.isActive());
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+        context.close();
+        validationManager.close();
+        contextOptions.close();
+        chainParams.close();
+
+        assertEquals(half, inline.size(), "Closed subscriptions should stop receiving events");
+        assertEquals(blockData.size() - half, late.size(), "Subscriptions added later should see later events");
+        assertEquals(half + 1, late.get(0).intValue());
+        assertEquals(blockData.size(), pooled.size());
+        for (int i = 0; i < pooled.size(); i++) {
+            assertEquals(i + 1, pooled.get(i).intValue(), "A pooled subscriber should see events in order");
+        }
+        assertEquals(blockData.size(), new HashSet<>(pooledHashes).size());
+        System.out.println("Subscriptions test passed");
+    }
+
+    @Test
+    @Order(26)
+    @DisplayName("Test upcall views - lookup tables, message views and callback-scoped blocks")
+    public void testUpcallViews(@TempDir Path tempDir) throws Exception {
+        setupLogging();
+        for (SynchronizationState state : SynchronizationState.values()) {
+            assertSame(state, SynchronizationState.fromByte((byte) state.getValue()), "Lookup should round trip");
+        }
+        for (ValidationMode mode : ValidationMode.values()) {
+            assertSame(mode, ValidationMode.fromByte(mode.getValue()), "Lookup should round trip");
+        }
+        for (BlockValidationState.BlockValidationResult result : BlockValidationState.BlockValidationResult.values()) {
+            assertSame(result, BlockValidationState.BlockValidationResult.fromInt(result.getValue()),
+                "Lookup should round trip");
+        }
+        assertThrows(IllegalArgumentException.class, () -> ValidationMode.fromByte((byte) -1));
+        assertThrows(IllegalArgumentException.class, () -> BlockValidationState.BlockValidationResult.fromInt(1000));
+
+        try (Arena arena = Arena.ofConfined()) {
+            NativeText text = new NativeText();
+            MemorySegment ascii = arena.allocateFrom("Loading block index");
+            text.reset(ascii, 19);
+            assertEquals(19, text.length());
+            assertEquals('L', text.charAt(0));
+            assertEquals("Loading block index", text.toString());
+            assertEquals("block", text.subSequence(8, 13).toString());
+
+            byte[] utf8 = "Verifying blocks… 50%".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            text.reset(arena.allocateFrom(ValueLayout.JAVA_BYTE, utf8), utf8.length);
+            assertEquals("Verifying blocks… 50%", text.toString());
+            assertEquals(21, text.length());
+            text.invalidate();
+            assertThrows(IllegalStateException.class, text::length, "Views must not outlive the callback");
+        }
+
+        List<byte[]> blockData = readBlockData();
+        List<BlockTreeEntry> retainedEntries = new ArrayList<>();
+        List<Block> retainedBlocks = new ArrayList<>();
+        List<Block> copies = new ArrayList<>();
+        NotificationsManager.ValidationInterfaceManager validationManager =
+            new NotificationsManager.ValidationInterfaceManager(
+                new NotificationsManager.ValidationInterfaceCallbacks() {
+                    @Override
+                    public void blockChecked(Block block, BlockValidationState state) {
+                        assertTrue(state.isValid());
+                    }
+
+                    @Override
+                    public void powValidBlock(Block block, BlockTreeEntry blockIndex) {
+                    }
+
+                    @Override
+                    public void blockConnected(Block block, BlockTreeEntry blockIndex) {
+                        if (retainedEntries.isEmpty()) {
+                            retainedEntries.add(blockIndex);
+                            retainedEntries.add(blockIndex.copy());
+                            retainedBlocks.add(block);
+                            copies.add(block.copy());
+                        } else {
+                            assertSame(retainedEntries.get(0), blockIndex, "Entries should be reused");
+                            assertSame(retainedBlocks.get(0), block, "Blocks should be reused");
+                        }
+                    }
+
+                    @Override
+                    public void blockDisconnected(Block block, BlockTreeEntry blockIndex) {
+                    }
+                }
+            );
+
+        ChainParameters chainParams = new ChainParameters(ChainType.REGTEST);
+        ContextManager.ContextOptions contextOptions = new ContextManager.ContextOptions();
+        contextOptions.setChainParams(chainParams);
+        contextOptions.setValidationInterface(validationManager);
+        ContextManager.Context context = new ContextManager.Context(contextOptions);
+
+        Path blocksDir = tempDir.resolve("blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(context, tempDir.toString(), blocksDir.toString());
+        try (ChainstateManager chainman = new ChainstateManager(context, options)) {
+            for (byte[] rawBlock : blockData) {
+                try (Block block = new Block(rawBlock)) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            assertThrows(IllegalStateException.class, () -> retainedEntries.get(0).getHeight());
+            assertThrows(IllegalStateException.class, () -> retainedBlocks.get(0).getHashValue());
+            assertEquals(1, retainedEntries.get(1).getHeight(), "Copied entries stay valid");
+            try (Block first = new Block(blockData.get(0)); Block copy = copies.get(0)) {
+                assertEquals(first.getHashValue(), copy.getHashValue(), "Copied blocks stay valid");
+            }
+        }
+        context.close();
+        validationManager.close();
+        contextOptions.close();
+        chainParams.close();
+        System.out.println("Upcall views test passed");
+    }
+
+    @Test
+    @Order(27)
+    @DisplayName("Test coalesced tip delivery")
+    public void testCoalescingNotificationAdapter() throws Exception {
+        List<Long> headerHeights = Collections.synchronizedList(new ArrayList<>());
+        List<SynchronizationState> blockStates = Collections.synchronizedList(new ArrayList<>());
+        List<String> passedOn = Collections.synchronizedList(new ArrayList<>());
+        NotificationsManager.KernelNotificationInterfaceCallbacks delegate =
+            new NotificationsManager.KernelNotificationInterfaceCallbacks() {
+                @Override
+                public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+                    blockStates.add(state);
+                }
+
+                @Override
+                public void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+                    headerHeights.add(height);
+                }
+
+                @Override
+                public void progress(String title, int progressPercent, boolean resumePossible) {
+                    passedOn.add(title);
+                }
+
+                @Override
+                public void warningSet(Warning warning, String message) {
+                }
+
+                @Override
+                public void warningUnset(Warning warning) {
+                }
+
+                @Override
+                public void flushError(String message) {
+                }
+
+                @Override
+                public void fatalError(String message) {
+                }
+            };
+
+        // Long enough that only explicit flushes deliver anything
+        try (CoalescingNotificationAdapter adapter = new CoalescingNotificationAdapter(delegate, Duration.ofHours(1))) {
+            for (long height = 1; height <= 1000; height++) {
+                adapter.headerTip(SynchronizationState.INIT_DOWNLOAD, height, 1_600_000_000L + height, false);
+                adapter.blockTip(SynchronizationState.INIT_DOWNLOAD, null, height / 1000.0);
+            }
+            assertTrue(headerHeights.isEmpty(), "Tips should wait for the scheduler");
+
+            adapter.progress("Verifying blocks", 50, false);
+            assertTrue(headerHeights.isEmpty(), "Other notifications should not flush pending tips");
+            assertEquals(List.of("Verifying blocks"), passedOn);
+
+            adapter.headerTip(SynchronizationState.INIT_DOWNLOAD, 1001, 1_600_001_001L, false);
+            adapter.blockTip(SynchronizationState.POST_INIT, null, 1.0);
+            assertEquals(List.of(1001L), headerHeights, "Leaving initial sync should flush right away");
+            assertEquals(SynchronizationState.POST_INIT, blockStates.get(blockStates.size() - 1));
+            assertEquals(2002, adapter.getReceived());
+            assertEquals(adapter.getReceived(), adapter.getDelivered() + adapter.getCoalesced());
+
+            adapter.headerTip(SynchronizationState.INIT_DOWNLOAD, 1002, 1_600_001_002L, false);
+        }
+        assertEquals(1002L, headerHeights.get(headerHeights.size() - 1).longValue(), "Closing should flush");
+
+        List<Long> ticks = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch delivered = new CountDownLatch(1);
+        NotificationsManager.KernelNotificationInterfaceCallbacks counting =
+            new NotificationsManager.KernelNotificationInterfaceCallbacks() {
+                @Override
+                public void blockTip(SynchronizationState state, BlockTreeEntry blockIndex, double verificationProgress) {
+                }
+
+                @Override
+                public void headerTip(SynchronizationState state, long height, long timestamp, boolean presync) {
+                    ticks.add(height);
+                    delivered.countDown();
+                }
+
+                @Override
+                public void progress(String title, int progressPercent, boolean resumePossible) {
+                }
+
+                @Override
+                public void warningSet(Warning warning, String message) {
+                }
+
+                @Override
+                public void warningUnset(Warning warning) {
+                }
+
+                @Override
+                public void flushError(String message) {
+                }
+
+                @Override
+                public void fatalError(String message) {
+                }
+            };
+        try (CoalescingNotificationAdapter adapter = new CoalescingNotificationAdapter(counting, Duration.ofMillis(20))) {
+            adapter.headerTip(SynchronizationState.INIT_DOWNLOAD, 7, 1_600_000_000L, false);
+            assertTrue(delivered.await(10, TimeUnit.SECONDS), "The scheduler should deliver pending tips");
+        }
+        assertEquals(List.of(7L), ticks);
+        System.out.println("Coalescing notification adapter test passed");
+    }
+
+    @Test
+    @Order(28)
+    @DisplayName("Test the Java side active chain index")
+    public void testChainIndex(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        List<byte[]> blockData = readBlockData();
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(setup.context, setup.dataDir, blocksDir.toString());
+        int half = blockData.size() / 2;
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options)) {
+            for (int i = 0; i < half; i++) {
+                try (Block block = new Block(blockData.get(i))) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            try (ChainIndex index = new ChainIndex(chainman)) {
+                assertEquals(half, index.getHeight(), "The index should be built from the active chain");
+                long builtVersion = index.getVersion();
+
+                // Kept current while readers look up heights
+                AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+                Thread reader = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 10_000; i++) {
+                            int height = index.getHeight();
+                            assertNotNull(index.getBlockHash(height));
+                        }
+                    } catch (Throwable t) {
+                        readerFailure.set(t);
+                    }
+                });
+                reader.start();
+                for (int i = half; i < blockData.size(); i++) {
+                    try (Block block = new Block(blockData.get(i))) {
+                        assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                    }
+                }
+                reader.join();
+                Throwable failure = readerFailure.get();
+                if (failure instanceof Error error) {
+                    throw error;
+                }
+                if (failure != null) {
+                    throw (Exception) failure;
+                }
+
+                Chain chain = chainman.getChain();
+                assertEquals(chain.getHeight(), index.getHeight());
+                assertEquals(builtVersion + blockData.size() - half, index.getVersion());
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment hash = arena.allocate(32);
+                    for (int height = 0; height <= chain.getHeight(); height++) {
+                        BlockTreeEntry entry = chain.getByHeight(height);
+                        assertEquals(entry.getBlockHashValue(), index.getBlockHash(height));
+                        assertEquals(height, index.getEntry(height).getHeight());
+                        assertTrue(index.copyBlockHash(height, hash));
+                        assertEquals(entry.getBlockHashValue(), BlockHashValue.fromBytes(hash.toArray(ValueLayout.JAVA_BYTE)));
+                    }
+                    assertFalse(index.copyBlockHash(chain.getHeight() + 1, hash));
+                }
+                assertThrows(IllegalArgumentException.class, () -> index.getBlockHash(-1));
+                assertThrows(IllegalArgumentException.class, () -> index.getEntry(blockData.size() + 1));
+
+                // A longer branch off three blocks below the tip disconnects them
+                int oldTip = chain.getHeight();
+                int forkHeight = oldTip - 3;
+                long versionBefore = index.getVersion();
+                List<BlockHashValue> branch = mineBranch(chainman, chain.getByHeight(forkHeight), 5);
+                assertEquals(forkHeight + 5, chain.getHeight(), "The longer branch should become active");
+                assertEquals(chain.getHeight(), index.getHeight());
+                assertEquals(versionBefore + 3 + 5, index.getVersion(), "Each disconnect and connect is an update");
+                for (int i = 0; i < branch.size(); i++) {
+                    int height = forkHeight + 1 + i;
+                    assertEquals(branch.get(i), index.getBlockHash(height), "Reorged heights should hold the branch");
+                    assertEquals(branch.get(i), index.getEntry(height).getBlockHashValue());
+                    assertEquals(chain.getByHeight(height).getBlockHashValue(), index.getBlockHash(height));
+                }
+                assertEquals(chain.getByHeight(forkHeight).getBlockHashValue(), index.getBlockHash(forkHeight));
+            }
+        }
+        options.close();
+        System.out.println("Chain index test passed");
+    }
+
+    @Test
+    @Order(29)
+    @DisplayName("Test block hash to height lookups")
+    public void testChainIndexHashLookup(@TempDir Path tempDir) throws Exception {
+        setupLogging();
+        BlockHashTable table = new BlockHashTable(0);
+        Random random = new Random(21);
+        long[][] keys = new long[5000][4];
+        for (int i = 0; i < keys.length; i++) {
+            for (int w = 0; w < 4; w++) {
+                keys[i][w] = random.nextLong();
+            }
+            table.put(keys[i][0], keys[i][1], keys[i][2], keys[i][3], i, i % 2 == 0);
+        }
+        assertEquals(keys.length, table.size(), "The table should grow past its initial capacity");
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(((long) i << 1) | (i % 2 == 0 ? 1 : 0), table.find(keys[i][0], keys[i][1], keys[i][2], keys[i][3]));
+        }
+        table.put(keys[0][0], keys[0][1], keys[0][2], keys[0][3], 0, false);
+        assertEquals(0L, table.find(keys[0][0], keys[0][1], keys[0][2], keys[0][3]), "Marking inactive should keep the entry");
+        assertEquals(keys.length, table.size());
+        assertEquals(-1L, table.find(1, 2, 3, 4));
+
+        TestSetup setup = testingSetup(tempDir);
+        List<byte[]> blockData = readBlockData();
+        Path blocksDir = Paths.get(setup.dataDir, "blocks");
+        Files.createDirectories(blocksDir);
+        ChainstateManagerOptions options = new ChainstateManagerOptions(setup.context, setup.dataDir, blocksDir.toString());
+        try (ChainstateManager chainman = new ChainstateManager(setup.context, options);
+             ChainIndex index = new ChainIndex(chainman)) {
+            for (byte[] rawBlock : blockData) {
+                try (Block block = new Block(rawBlock)) {
+                    assertTrue(chainman.ProcessBlock(block, new boolean[1]), "Block processing should succeed");
+                }
+            }
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment native32 = arena.allocate(32);
+                for (int height = 0; height <= index.getHeight(); height++) {
+                    BlockHashValue hash = index.getBlockHash(height);
+                    assertEquals(height, index.getHeight(hash));
+                    assertEquals(height, index.getHeight(hash.toBytes()));
+                    assertEquals(height, index.getHeight(hash.toHex()));
+                    hash.copyTo(native32);
+                    assertEquals(height, index.getHeight(native32));
+                }
+
+                // Blocks disconnected by a reorg stop resolving, their replacements resolve
+                int forkHeight = index.getHeight() - 3;
+                List<BlockHashValue> disconnected = new ArrayList<>();
+                for (int height = forkHeight + 1; height <= index.getHeight(); height++) {
+                    disconnected.add(index.getBlockHash(height));
+                }
+                List<BlockHashValue> branch = mineBranch(chainman, chainman.getChain().getByHeight(forkHeight), 5);
+                for (BlockHashValue hash : disconnected) {
+                    assertEquals(-1, index.getHeight(hash));
+                    assertEquals(-1, index.getHeight(hash.toBytes()), "Disconnected blocks should not resolve");
+                    assertEquals(-1, index.getHeight(hash.toHex()));
+                    hash.copyTo(native32);
+                    assertEquals(-1, index.getHeight(native32));
+                }
+                for (int i = 0; i < branch.size(); i++) {
+                    assertEquals(forkHeight + 1 + i, index.getHeight(branch.get(i).toBytes()));
+                }
+            }
+            assertEquals(-1, index.getHeight(new byte[32]), "Unknown hashes should not resolve");
+            assertThrows(IllegalArgumentException.class, () -> index.getHeight(new byte[31]));
+            assertThrows(IllegalArgumentException.class, () -> index.getHeight("zz"));
+        }
+        options.close();
+        System.out.println("Chain index hash lookup test passed");
+    }
+
+    @Test
+    @Order(30)
+    @DisplayName("Test range, reverse and parallel chain iteration")
+    public void testChainStreams(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            Chain chain = chainman.getChain();
+            int tipHeight = chain.getHeight();
+
+            Spliterator<BlockTreeEntry> spliterator = chain.spliterator();
+            assertEquals(tipHeight + 1, spliterator.getExactSizeIfKnown(), "The size should be exact");
+            Spliterator<BlockTreeEntry> prefix = spliterator.trySplit();
+            assertNotNull(prefix);
+            assertEquals(tipHeight + 1, prefix.estimateSize() + spliterator.estimateSize());
+            assertFalse(spliterator.hasCharacteristics(Spliterator.IMMUTABLE), "The chain may change while it is traversed");
+            assertFalse(prefix.hasCharacteristics(Spliterator.IMMUTABLE));
+
+            List<Integer> heights = chain.stream().map(BlockTreeEntry::getHeight).toList();
+            List<Integer> parallel = chain.stream().parallel().map(BlockTreeEntry::getHeight).toList();
+            assertEquals(heights, parallel, "A parallel stream should keep the chain order");
+            for (int height = 0; height <= tipHeight; height++) {
+                assertEquals(height, heights.get(height).intValue());
+            }
+
+            List<Integer> range = chain.range(2, 5).map(BlockTreeEntry::getHeight).toList();
+            assertEquals(List.of(2, 3, 4), range);
+            assertEquals(0, chain.range(3, 3).count());
+            assertThrows(IllegalArgumentException.class, () -> chain.range(3, 2));
+            assertThrows(IllegalArgumentException.class, () -> chain.range(0, tipHeight + 2));
+
+            List<Integer> reversed = chain.reversed().map(BlockTreeEntry::getHeight).toList();
+            assertEquals(tipHeight, reversed.get(0).intValue(), "Reverse iteration should start at the tip");
+            assertEquals(reversed, chain.reversed().parallel().map(BlockTreeEntry::getHeight).toList());
+            for (int i = 0; i < reversed.size(); i++) {
+                assertEquals(tipHeight - i, reversed.get(i).intValue());
+            }
+
+            long transactions = chain.stream().parallel().mapToLong(entry -> {
+                try (Block block = chainman.readBlock(entry)) {
+                    assertEquals(block.countTransaction(), block.transactions().parallel().count());
+                    return block.countTransaction();
+                }
+            }).sum();
+            assertTrue(transactions > tipHeight, "Every block should have a coinbase");
+
+            BlockTreeEntry tip = chain.getByHeight(tipHeight);
+            try (Block block = chainman.readBlock(tip)) {
+                assertTrue(block.transactions().spliterator().hasCharacteristics(Spliterator.IMMUTABLE));
+            }
+            BlockSpentOutputs spentOutputs = chainman.readBlockSpentOutputs(tip);
+            if (spentOutputs != null) {
+                assertEquals(spentOutputs.count(), spentOutputs.stream().parallel().count());
+                long coins = 0;
+                for (TransactionSpentOutputs txSpent : spentOutputs) {
+                    coins += txSpent.count();
+                }
+                assertEquals(coins, spentOutputs.stream().parallel().mapToLong(TransactionSpentOutputs::count).sum());
+                spentOutputs.close();
+            }
+        }
+        System.out.println("Chain streams test passed");
+    }
+
+    @Test
+    @Order(31)
+    @DisplayName("Test parallel ordered block reads")
+    public void testParallelBlockReader(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            Chain chain = chainman.getChain();
+            int tipHeight = chain.getHeight();
+
+            try (ParallelBlockReader reader = new ParallelBlockReader(chainman, 1, tipHeight + 1, 4, 8, true)) {
+                int expected = 1;
+                while (reader.hasNext()) {
+                    try (ParallelBlockReader.BlockRead read = reader.next()) {
+                        assertEquals(expected, read.getHeight(), "Blocks should arrive in height order");
+                        assertEquals(chain.getByHeight(expected).getBlockHashValue(), read.getBlock().getHashValue());
+                        assertEquals(read.getBlock().countTransaction() - 1, read.getSpentOutputs().count());
+                        assertTrue(reader.getWindow() >= 4 && reader.getWindow() <= 8);
+                    }
+                    expected++;
+                }
+                assertEquals(tipHeight + 1, expected, "Every height should be read");
+                assertThrows(NoSuchElementException.class, reader::next);
+            }
+
+            // Closing early releases the blocks read ahead
+            ParallelBlockReader reader = new ParallelBlockReader(chainman, 0, tipHeight + 1, 2, false);
+            try (ParallelBlockReader.BlockRead read = reader.next()) {
+                assertEquals(0, read.getHeight());
+                assertNull(read.getSpentOutputs());
+            }
+            reader.close();
+            assertThrows(IllegalStateException.class, reader::hasNext);
+            assertThrows(IllegalArgumentException.class,
+                () -> new ParallelBlockReader(chainman, 0, tipHeight + 2, 2, false));
+        }
+        System.out.println("Parallel block reader test passed");
+    }
+
+    @Test
+    @Order(32)
+    @DisplayName("Test the block read cache")
+    public void testBlockReadCache(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            assertNull(chainman.getReadCache());
+            BlockReadCache cache = chainman.enableReadCache(1 << 20);
+            assertSame(cache, chainman.getReadCache(), "The enabled cache should be returned");
+            assertThrows(IllegalStateException.class, () -> chainman.enableReadCache(1 << 20));
+
+            Chain chain = chainman.getChain();
+            BlockTreeEntry tip = chain.getByHeight(chain.getHeight());
+            BlockHashValue tipHash = tip.getBlockHashValue();
+            try (Block first = chainman.readBlock(tip)) {
+                assertEquals(tipHash, first.getHashValue());
+            }
+            try (Block second = chainman.readBlock(tip);
+                 Block third = chainman.readBlock(tip)) {
+                // Cached references outlive each other
+                second.close();
+                assertEquals(tipHash, third.getHashValue());
+            }
+            assertEquals(1, cache.getMisses());
+            assertEquals(2, cache.getHits());
+            assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+
+            BlockSpentOutputs spentOutputs = chainman.readBlockSpentOutputs(tip);
+            long count = spentOutputs.count();
+            spentOutputs.close();
+            BlockSpentOutputs cached = chainman.readBlockSpentOutputs(tip);
+            assertEquals(count, cached.count());
+            cached.close();
+            assertEquals(3, cache.getHits());
+            assertEquals(2, cache.getEntryCount());
+            assertTrue(cache.getWeight() > 0 && cache.getWeight() <= cache.getMaxBytes());
+
+            // A reorg disconnects the cached tip
+            assertEquals(0, cache.getInvalidations());
+            mineBranch(chainman, chain.getByHeight(tip.getHeight() - 1), 2);
+            assertNotEquals(tipHash, chain.getByHeight(tip.getHeight()).getBlockHashValue());
+            assertEquals(2, cache.getInvalidations(), "The disconnected block and its spent outputs should be dropped");
+            long misses = cache.getMisses();
+            try (Block stale = chainman.readBlock(tip)) {
+                assertEquals(tipHash, stale.getHashValue());
+            }
+            assertEquals(misses + 1, cache.getMisses(), "A disconnected block should be read again");
+        }
+
+        // A small budget keeps only the most recent blocks
+        String smallDir = tempDir.resolve("small").toString();
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, smallDir)) {
+            Chain chain = chainman.getChain();
+            long blockSize;
+            try (Block block = chainman.readBlock(chain.getByHeight(1))) {
+                blockSize = block.serializedSize();
+            }
+            BlockReadCache cache = chainman.enableReadCache(blockSize * 3);
+            for (int height = 1; height <= chain.getHeight(); height++) {
+                try (Block block = chainman.readBlock(chain.getByHeight(height))) {
+                    assertNotNull(block);
+                }
+            }
+            assertTrue(cache.getEvictions() > 0, "Reads past the budget should evict");
+            assertTrue(cache.getWeight() <= cache.getMaxBytes());
+        }
+        System.out.println("Block read cache test passed");
+    }
+
+    @Test
+    @Order(33)
+    @DisplayName("Test ancestor and fork point queries")
+    public void testBlockTreeAncestry(@TempDir Path tempDir) throws Exception {
+        TestSetup setup = testingSetup(tempDir);
+        try (ChainstateManager chainman = setupChainstateManagerWithBlocks(setup.context, setup.dataDir)) {
+            Chain chain = chainman.getChain();
+            int tipHeight = chain.getHeight();
+            BlockTreeEntry tip = chain.getByHeight(tipHeight);
+            BlockTreeAncestry ancestry = new BlockTreeAncestry(chainman);
+
+            for (int height = 0; height <= tipHeight; height++) {
+                BlockTreeEntry ancestor = ancestry.getAncestor(tip, height);
+                assertEquals(height, ancestor.getHeight());
+                assertEquals(chain.getByHeight(height).getBlockHashValue(), ancestor.getBlockHashValue());
+            }
+            assertThrows(IllegalArgumentException.class, () -> ancestry.getAncestor(tip, tipHeight + 1));
+            assertThrows(IllegalArgumentException.class, () -> ancestry.getAncestor(tip, -1));
+
+            assertEquals(tip.getBlockHashValue(), ancestry.findFork(tip).getBlockHashValue(),
+                "A block on the active chain is its own fork point");
+            BlockTreeEntry middle = chain.getByHeight(tipHeight / 2);
+            assertEquals(middle.getBlockHashValue(), ancestry.lastCommonAncestor(tip, middle).getBlockHashValue());
+            assertEquals(middle.getBlockHashValue(), ancestry.lastCommonAncestor(middle, tip).getBlockHashValue());
+            assertEquals(tip.getBlockHashValue(), ancestry.lastCommonAncestor(tip, tip).getBlockHashValue());
+            assertEquals(0, ancestry.getNodeCount(), "The active chain should not need skip list nodes");
+
+            // A stale branch off the active chain, shorter than it so it never becomes active
+            int forkHeight = 20;
+            int branchLength = 120;
+            assertTrue(forkHeight + branchLength < tipHeight, "Need a longer active chain");
+            BlockTreeEntry forkPoint = chain.getByHeight(forkHeight);
+            List<BlockTreeEntry> branch = new ArrayList<>();
+            for (BlockHashValue hashValue : mineBranch(chainman, forkPoint, branchLength)) {
+                try (BlockHash hash = hashValue.toBlockHash()) {
+                    BlockTreeEntry entry = chainman.getBlockTreeEntry(hash);
+                    assertNotNull(entry);
+                    assertFalse(chain.contains(entry), "The branch should stay off the active chain");
+                    branch.add(entry);
+                }
+            }
+            assertEquals(tipHeight, chain.getHeight());
+
+            BlockTreeEntry branchTip = branch.get(branchLength - 1);
+            BlockTreeEntry walk = branchTip;
+            for (int height = branchTip.getHeight(); height >= 0; height--) {
+                assertEquals(walk.getBlockHashValue(), ancestry.getAncestor(branchTip, height).getBlockHashValue(),
+                    "Skip list hops should match walking back to height " + height);
+                walk = walk.getPrevious();
+            }
+            assertTrue(ancestry.getNodeCount() > 0 && ancestry.getNodeCount() <= branchLength,
+                "Only the stale branch should get skip list nodes");
+
+            // Fresh instances, so nodes are also built from the middle of the branch
+            Random random = new Random(25);
+            for (int i = 0; i < 200; i++) {
+                BlockTreeAncestry fresh = i % 50 == 0 ? new BlockTreeAncestry(chainman) : ancestry;
+                BlockTreeEntry from = branch.get(random.nextInt(branchLength));
+                int height = random.nextInt(from.getHeight() + 1);
+                BlockTreeEntry expected = height <= forkHeight
+                    ? chain.getByHeight(height) : branch.get(height - forkHeight - 1);
+                assertEquals(expected.getBlockHashValue(), fresh.getAncestor(from, height).getBlockHashValue());
+            }
+
+            BlockHashValue forkHash = forkPoint.getBlockHashValue();
+            assertEquals(forkHash, ancestry.findFork(branchTip).getBlockHashValue());
+            assertEquals(forkHash, ancestry.findFork(branch.get(0)).getBlockHashValue());
+            assertEquals(forkHash, ancestry.lastCommonAncestor(branchTip, tip).getBlockHashValue());
+            assertEquals(forkHash, ancestry.lastCommonAncestor(chain.getByHeight(forkHeight + 1), branchTip)
+                .getBlockHashValue());
+            BlockTreeEntry branchMiddle = branch.get(branchLength / 2);
+            assertEquals(branchMiddle.getBlockHashValue(),
+                ancestry.lastCommonAncestor(branchTip, branchMiddle).getBlockHashValue());
+            assertEquals(chain.getByHeight(10).getBlockHashValue(),
+                ancestry.lastCommonAncestor(chain.getByHeight(10), branchTip).getBlockHashValue());
+        }
+        System.out.println("Block tree ancestry test passed");
+    }
+
+    @Test
+    @Order(34)
+    @DisplayName("Test that a coalesced notification never overtakes a newer one")
+    public void testCoalescedNotificationOrder() throws Exception {
+        List<Long> delivered = Collections.synchronizedList(new ArrayList<>());
+        List<Long> discarded = Collections.synchronizedList(new ArrayList<>());
+        Semaphore entered = new Semaphore(0);
+        Semaphore proceed = new Semaphore(0);
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test-dispatcher", 2,
+            NotificationsManager.OverflowPolicy.COALESCE, new int[] {0}, 1,
+            new NotificationDispatcher.Handler() {
+                @Override
+                public void deliver(NotificationDispatcher.Event event) {
+                    entered.release();
+                    proceed.acquireUninterruptibly();
+                    delivered.add(event.word0);
+                }
+
+                @Override
+                public void discard(NotificationDispatcher.Event event) {
+                    discarded.add(event.word0);
+                }
+            });
+
+        dispatcher.publish(0, 0, 0, 1, 0, 0, null);
+        entered.acquire();
+        // The consumer holds the first tip, the next two fill the ring and the fourth is parked
+        dispatcher.publish(0, 0, 0, 2, 0, 0, null);
+        dispatcher.publish(0, 0, 0, 3, 0, 0, null);
+        dispatcher.publish(0, 0, 0, 4, 0, 0, null);
+        proceed.release();
+        entered.acquire();
+        // A slot is free again, the newest tip goes to the ring and replaces the parked one
+        dispatcher.publish(0, 0, 0, 5, 0, 0, null);
+        proceed.release(10);
+        dispatcher.awaitDelivery();
+        dispatcher.close();
+
+        assertEquals(List.of(1L, 2L, 3L, 5L), delivered, "The parked tip should not be delivered after a newer one");
+        assertEquals(List.of(4L), discarded);
+        assertEquals(1, dispatcher.getCoalesced());
+
+        // Two coalescable types and one that is not
+        delivered.clear();
+        discarded.clear();
+        entered.drainPermits();
+        proceed.drainPermits();
+        NotificationDispatcher mixed = new NotificationDispatcher("test-dispatcher-mixed", 2,
+            NotificationsManager.OverflowPolicy.COALESCE, new int[] {0, 1}, 3,
+            new NotificationDispatcher.Handler() {
+                @Override
+                public void deliver(NotificationDispatcher.Event event) {
+                    entered.release();
+                    proceed.acquireUninterruptibly();
+                    delivered.add(event.word0);
+                }
+
+                @Override
+                public void discard(NotificationDispatcher.Event event) {
+                    discarded.add(event.word0);
+                }
+            });
+        mixed.publish(0, 0, 0, 1, 0, 0, null);
+        entered.acquire();
+        mixed.publish(0, 0, 0, 2, 0, 0, null);
+        mixed.publish(0, 0, 0, 3, 0, 0, null);
+        // Parked in the order they were raised, progress before the tip
+        mixed.publish(1, 0, 0, 4, 0, 0, null);
+        mixed.publish(0, 0, 0, 5, 0, 0, null);
+        proceed.release();
+        entered.acquire();
+        // A warning raised after the parked records has to wait behind them
+        Thread publisher = new Thread(() -> mixed.publish(2, 0, 0, 6, 0, 0, null));
+        publisher.start();
+        while (publisher.getState() != Thread.State.TIMED_WAITING && publisher.isAlive()) {
+            Thread.onSpinWait();
+        }
+        proceed.release(10);
+        publisher.join();
+        mixed.awaitDelivery();
+        mixed.close();
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), delivered, "Notifications should arrive in the order they were raised");
+        assertTrue(discarded.isEmpty());
+        System.out.println("Coalesced notification order test passed");
+    }
 }